@@ -4,6 +4,7 @@ plugins {
     id("java-library")
     id("maven-publish")
     id("com.gradleup.shadow") version "8.3.3"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "${project.property("pluginGroup")}"
@@ -27,6 +28,23 @@ dependencies {
     compileOnly(group = "net.luckperms", name = "api", version = "5.4")
     implementation(group = "io.papermc", name = "paperlib", version = "1.0.8")
     implementation(group = "org.bstats", name = "bstats-bukkit", version = "3.0.2")
+    jmh(group = "io.papermc.paper", name = "paper-api", version = "1.21.1-R0.1-SNAPSHOT")
+    jmh(group = "net.luckperms", name = "api", version = "5.4")
+    jmh(group = "org.objenesis", name = "objenesis", version = "3.4")
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    // Allocation rates are as important as times, since anything run every tick should not allocate
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    warmup.set("2s")
+    iterations.set(5)
+    timeOnIteration.set("2s")
+    resultFormat.set("JSON")
+    // Run a subset with -PjmhIncludes=<regex>, for example -PjmhIncludes=TickIntervalBenchmark
+    project.findProperty("jmhIncludes")?.let { includes.add(it.toString()) }
 }
 
 tasks {
@@ -42,6 +60,9 @@ tasks {
     }
     jar {
         archiveClassifier.set("noshade")
+        manifest {
+            attributes("Main-Class" to "org.popcraft.stress.tps.TickRecordingAnalyzer")
+        }
     }
     shadowJar {
         archiveClassifier.set("")
@@ -52,4 +73,19 @@ tasks {
     build {
         dependsOn(shadowJar)
     }
+    // Replays ticks through the tick profiler with concurrent readers, and fails if recording ticks allocates or the
+    // statistics are wrong
+    // Pass arguments with -PreplayArgs, for example -PreplayArgs="trace=run.ticks readers=4"
+    val replay by registering(JavaExec::class) {
+        group = "verification"
+        description = "Replays ticks through the tick profiler and reports throughput, latency and memory."
+        classpath = sourceSets["jmh"].runtimeClasspath
+        mainClass.set("org.popcraft.stress.tps.TickReplay")
+        maxHeapSize = "512m"
+        args = project.findProperty("replayArgs")?.toString()?.split(" ")?.filter { it.isNotEmpty() }
+            ?: listOf("ticks=200000", "readers=2")
+    }
+    test {
+        dependsOn(replay)
+    }
 }
@@ -0,0 +1,108 @@
+package org.popcraft.stress;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.objenesis.ObjenesisStd;
+import org.popcraft.stress.tps.TickProfiler;
+import org.popcraft.stress.tps.TpsUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Creates a plugin instance for benchmarks, which run outside of a server. A plugin can normally only be created by
+ * the server's plugin loader, so the instance is created without calling its constructor, and only the configuration
+ * and locales are set up, from the defaults in the plugin jar.
+ */
+public final class BenchmarkPlugin {
+
+    private BenchmarkPlugin() {
+    }
+
+    /**
+     * Creates a plugin with the default configuration, apart from the given settings.
+     *
+     * @param settings Configuration paths and values to override.
+     * @return The plugin.
+     */
+    public static Stress create(Map<String, Object> settings) {
+        Stress plugin = new ObjenesisStd().newInstance(Stress.class);
+        YamlConfiguration config = load("config.yml");
+        settings.forEach(config::set);
+        set(JavaPlugin.class, plugin, "newConfig", config);
+        set(Stress.class, plugin, "defaultLocale", load("locale_en.yml"));
+        set(Stress.class, plugin, "customLocale", new YamlConfiguration());
+        set(Stress.class, null, "plugin", plugin);
+        TpsUtil.loadConfig(plugin);
+        return plugin;
+    }
+
+    /**
+     * Sets the tick profiler of a plugin, which is what the rest of the plugin reads tick statistics from.
+     *
+     * @param plugin       The plugin.
+     * @param tickProfiler The tick profiler.
+     */
+    public static void setTickProfiler(Stress plugin, TickProfiler tickProfiler) {
+        set(Stress.class, plugin, "tickProfiler", tickProfiler);
+    }
+
+    /**
+     * Sets up a server for code which asks it about plugins, with a plugin manager that has no plugins. Anything else
+     * asked of the server is unsupported.
+     */
+    public static synchronized void setupServer() {
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+        PluginManager pluginManager = stub(PluginManager.class, "getPlugins", new Plugin[0]);
+        Server server = stub(Server.class, "getPluginManager", pluginManager);
+        // Setting the server normally logs the server version, which there is none of here
+        set(Bukkit.class, null, "server", server);
+    }
+
+    private static <T> T stub(Class<T> type, String methodName, Object result) {
+        Logger logger = Logger.getLogger("Benchmark");
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+            if (method.getName().equals(methodName)) {
+                return result;
+            } else if (method.getName().equals("getLogger")) {
+                return logger;
+            }
+            throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+        }));
+    }
+
+    private static YamlConfiguration load(String resource) {
+        YamlConfiguration configuration = new YamlConfiguration();
+        try (InputStream inputStream = Objects.requireNonNull(BenchmarkPlugin.class.getResourceAsStream("/" + resource))) {
+            configuration.load(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        } catch (IOException | InvalidConfigurationException e) {
+            throw new IllegalStateException("Unable to load " + resource, e);
+        }
+        return configuration;
+    }
+
+    private static void set(Class<?> type, Object instance, String name, Object value) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(instance, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to set " + name, e);
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.popcraft.stress;
+
+import net.luckperms.api.context.ContextConsumer;
+import net.luckperms.api.context.ContextSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.popcraft.stress.tps.Tick;
+import org.popcraft.stress.tps.TickProfiler;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the LuckPerms context calculators, which LuckPerms calls for every permission check that is not cached,
+ * and the once per second check for a new TPS value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LuckPermsContextsBenchmark {
+
+    private LuckPermsContexts.TpsContextCalculator tpsAbove, tpsBelow;
+    private ContextConsumer consumer;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        Stress plugin = BenchmarkPlugin.create(Collections.emptyMap());
+        TickProfiler tickProfiler = new TickProfiler(plugin) {
+            @Override
+            public void stop() {
+            }
+        };
+        for (int i = 1; i <= 200; ++i) {
+            tickProfiler.update(new Tick(i, i * 50_000_000L, (i - 1) * 50_000_000L));
+        }
+        BenchmarkPlugin.setTickProfiler(plugin, tickProfiler);
+        LuckPermsContexts.buildContexts();
+        LuckPermsContexts.setCurrentTps(LuckPermsContexts.calculateCurrentTps());
+        this.tpsAbove = new LuckPermsContexts.TpsContextCalculator(true);
+        this.tpsBelow = new LuckPermsContexts.TpsContextCalculator(false);
+        this.consumer = new ContextConsumer() {
+            @Override
+            public void accept(String key, String value) {
+                blackhole.consume(value);
+            }
+
+            @Override
+            public void accept(ContextSet contextSet) {
+                blackhole.consume(contextSet);
+            }
+        };
+    }
+
+    @Benchmark
+    public void calculateTpsAbove() {
+        this.tpsAbove.calculate(null, this.consumer);
+    }
+
+    @Benchmark
+    public void calculateTpsBelow() {
+        this.tpsBelow.calculate(null, this.consumer);
+    }
+
+    @Benchmark
+    public int calculateCurrentTps() {
+        return LuckPermsContexts.calculateCurrentTps();
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.popcraft.stress.tps;
+
+/**
+ * A histogram of latencies in nanoseconds, with 16 buckets for every power of two, so values are kept to within about
+ * 6%. Recording does not allocate, and each recorder must only be used by one thread at a time.
+ */
+final class LatencyRecorder {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    private long count, max;
+    private double sum;
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        ++this.counts[bucketOf(value)];
+        ++this.count;
+        this.sum += value;
+        this.max = Math.max(this.max, value);
+    }
+
+    void add(LatencyRecorder other) {
+        for (int i = 0; i < this.counts.length; ++i) {
+            this.counts[i] += other.counts[i];
+        }
+        this.count += other.count;
+        this.sum += other.sum;
+        this.max = Math.max(this.max, other.max);
+    }
+
+    long getCount() {
+        return this.count;
+    }
+
+    double getAverage() {
+        return this.count == 0 ? 0 : this.sum / this.count;
+    }
+
+    long getMax() {
+        return this.max;
+    }
+
+    /**
+     * Gets the value at a percentile, as the upper bound of the bucket it falls in.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The value in nanoseconds.
+     */
+    long getValueAtPercentile(double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+        long seen = 0;
+        for (int bucket = 0; bucket < this.counts.length; ++bucket) {
+            seen += this.counts[bucket];
+            if (seen >= rank) {
+                return Math.min(this.max, upperBoundOf(bucket));
+            }
+        }
+        return this.max;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+}
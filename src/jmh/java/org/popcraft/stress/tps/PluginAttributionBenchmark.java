@@ -0,0 +1,71 @@
+package org.popcraft.stress.tps;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.RegisteredListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.popcraft.stress.BenchmarkPlugin;
+import org.popcraft.stress.Stress;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of attributing a listener call to its plugin, by calling a listener which does nothing with and
+ * without the wrapper. Thread state is set up on the thread which runs the benchmark, so the attribution treats that
+ * thread as the main thread, which is where almost all listeners are called.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PluginAttributionBenchmark {
+
+    private RegisteredListener direct, attributed;
+    private Event event;
+
+    @Setup
+    public void setup() {
+        Stress plugin = BenchmarkPlugin.create(Collections.emptyMap());
+        BenchmarkPlugin.setupServer();
+        this.direct = new RegisteredListener(new Listener() {
+        }, (listener, event) -> {
+        }, EventPriority.NORMAL, plugin, false);
+        this.attributed = new PluginAttribution(plugin, new TickHistory(72000)).wrap(this.direct);
+        this.event = new BenchmarkEvent();
+    }
+
+    @Benchmark
+    public void callDirect() throws EventException {
+        this.direct.callEvent(this.event);
+    }
+
+    @Benchmark
+    public void callAttributed() throws EventException {
+        this.attributed.callEvent(this.event);
+    }
+
+    private static class BenchmarkEvent extends Event {
+
+        private static final HandlerList HANDLERS = new HandlerList();
+
+        @Override
+        public HandlerList getHandlers() {
+            return HANDLERS;
+        }
+
+        public static HandlerList getHandlerList() {
+            return HANDLERS;
+        }
+
+    }
+
+}
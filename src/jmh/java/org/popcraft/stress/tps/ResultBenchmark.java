@@ -0,0 +1,59 @@
+package org.popcraft.stress.tps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures calculating results, for a whole tick interval and for sub-intervals of it, and getting the cached result
+ * which is shared until the next tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResultBenchmark {
+
+    @Param({"200", "1200", "6000", "18000", "72000"})
+    public int window;
+
+    private TickInterval tickInterval;
+
+    @Setup
+    public void setup() {
+        TickHistory history = new TickHistory(this.window);
+        this.tickInterval = new TickInterval(history, this.window);
+        double[] tickDurations = TickPatterns.create("random", this.window, this.window);
+        for (int i = 0; i < this.window; ++i) {
+            history.addTick(i, i * 50d, 50, tickDurations[i], Math.max(0, 50 - tickDurations[i]));
+            this.tickInterval.update();
+        }
+    }
+
+    @Benchmark
+    public Result fullInterval() {
+        return new Result(this.tickInterval);
+    }
+
+    @Benchmark
+    public Result subInterval() {
+        return new Result(this.tickInterval, this.window / 2);
+    }
+
+    @Benchmark
+    public Result shortSubInterval() {
+        return new Result(this.tickInterval, 100);
+    }
+
+    @Benchmark
+    public Result cachedResult() {
+        return this.tickInterval.getResult();
+    }
+
+}
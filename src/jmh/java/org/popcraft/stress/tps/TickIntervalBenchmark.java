@@ -0,0 +1,56 @@
+package org.popcraft.stress.tps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding a tick to the tick history and updating a full tick interval over it, which is what happens on the
+ * main thread for every interval on every tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TickIntervalBenchmark {
+
+    private static final int TICK_DURATIONS = 1 << 17;
+
+    @Param({"200", "1200", "6000", "18000", "72000"})
+    public int window;
+
+    @Param({"random", "increasing", "decreasing", "sawtooth"})
+    public String pattern;
+
+    private TickHistory history;
+    private TickInterval tickInterval;
+    private double[] tickDurations;
+    private int tick;
+    private double tickTime;
+
+    @Setup
+    public void setup() {
+        this.history = new TickHistory(this.window);
+        this.tickInterval = new TickInterval(this.history, this.window);
+        this.tickDurations = TickPatterns.create(this.pattern, this.window, TICK_DURATIONS);
+        // Start with a full interval, so every tick also removes one
+        for (int i = 0; i < this.window; ++i) {
+            this.addTick();
+        }
+    }
+
+    @Benchmark
+    public void addTick() {
+        double tickDuration = this.tickDurations[this.tick & (TICK_DURATIONS - 1)];
+        this.tickTime += 50;
+        this.history.addTick(++this.tick, this.tickTime, 50, tickDuration, Math.max(0, 50 - tickDuration));
+        this.tickInterval.update();
+    }
+
+}
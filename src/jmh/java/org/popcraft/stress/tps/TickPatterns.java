@@ -0,0 +1,51 @@
+package org.popcraft.stress.tps;
+
+import java.util.Random;
+
+/**
+ * Tick duration patterns for benchmarks, each of which is a repeating sequence of tick durations in milliseconds.
+ */
+final class TickPatterns {
+
+    private TickPatterns() {
+    }
+
+    /**
+     * Creates a sequence of tick durations.
+     *
+     * @param pattern The pattern, which is one of:
+     *                <ul>
+     *                <li>random: uniformly random durations, the usual case</li>
+     *                <li>increasing: every tick is slower, so the minimum is evicted on every tick</li>
+     *                <li>decreasing: every tick is faster, so the maximum is evicted on every tick</li>
+     *                <li>sawtooth: slower ticks for a whole window, then a spike which replaces every candidate</li>
+     *                </ul>
+     * @param window  The window size in ticks, which the worst case patterns repeat over.
+     * @param length  The length of the sequence, which should be a power of two.
+     * @return The tick durations.
+     */
+    static double[] create(String pattern, int window, int length) {
+        double[] tickDurations = new double[length];
+        Random random = new Random(window);
+        // The worst case patterns must not repeat within a window, or their extremes would not be evicted
+        int period = Math.max(window + 1, 2);
+        for (int i = 0; i < length; ++i) {
+            switch (pattern) {
+                case "increasing":
+                    tickDurations[i] = 10 + 40d * (i % period) / period;
+                    break;
+                case "decreasing":
+                    tickDurations[i] = 50 - 40d * (i % period) / period;
+                    break;
+                case "sawtooth":
+                    tickDurations[i] = i % period == period - 1 ? 500 : 50 - 40d * (i % period) / period;
+                    break;
+                default:
+                    tickDurations[i] = 5 + random.nextDouble() * 60;
+                    break;
+            }
+        }
+        return tickDurations;
+    }
+
+}
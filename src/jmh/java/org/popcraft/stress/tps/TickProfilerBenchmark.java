@@ -0,0 +1,112 @@
+package org.popcraft.stress.tps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.popcraft.stress.BenchmarkPlugin;
+import org.popcraft.stress.Stress;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures recording a tick through the profiler, which updates every interval and moving average, and generating
+ * each kind of report. The longest interval is set to the window size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TickProfilerBenchmark {
+
+    private static final int TICK_DURATIONS = 1 << 17;
+
+    @Param({"200", "1200", "6000", "18000", "72000"})
+    public int window;
+
+    // Whether a tick is recorded before each report, so that no cached results can be used
+    @Param({"false", "true"})
+    public boolean tickBeforeReport;
+
+    private BenchmarkTickProfiler tickProfiler;
+    private double[] tickDurations;
+    private int tick;
+    private long tickTime;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("tps.intervals.shortest", Math.min(200, this.window) / 20 + " seconds");
+        settings.put("tps.intervals.short", Math.min(1200, this.window) / 20 + " seconds");
+        settings.put("tps.intervals.normal", Math.min(6000, this.window) / 20 + " seconds");
+        settings.put("tps.intervals.long", Math.min(18000, this.window) / 20 + " seconds");
+        settings.put("tps.intervals.longest", this.window / 20 + " seconds");
+        this.tickProfiler = new BenchmarkTickProfiler(BenchmarkPlugin.create(settings));
+        this.tickDurations = TickPatterns.create("random", this.window, TICK_DURATIONS);
+        for (int i = 0; i < this.window; ++i) {
+            this.recordTick();
+        }
+    }
+
+    @Benchmark
+    public void recordTick() {
+        double tickDuration = this.tickDurations[this.tick & (TICK_DURATIONS - 1)];
+        this.tickTime += 50_000_000L;
+        this.tickProfiler.update(++this.tick, this.tickTime, tickDuration,
+                (long) (Math.max(0, 50 - tickDuration) * 1e6d));
+    }
+
+    @Benchmark
+    public String tpsReport() {
+        this.maybeRecordTick();
+        return this.tickProfiler.tpsReport();
+    }
+
+    @Benchmark
+    public String tpsReportInterval() {
+        this.maybeRecordTick();
+        return this.tickProfiler.tpsReport("longest");
+    }
+
+    @Benchmark
+    public String tpsReportTicks() {
+        this.maybeRecordTick();
+        return this.tickProfiler.tpsReport(this.window / 2);
+    }
+
+    @Benchmark
+    public String tpsPercentilesReport() {
+        this.maybeRecordTick();
+        return this.tickProfiler.tpsPercentilesReport();
+    }
+
+    @Benchmark
+    public String tpsAveragesReport() {
+        this.maybeRecordTick();
+        return this.tickProfiler.tpsAveragesReport();
+    }
+
+    private void maybeRecordTick() {
+        if (this.tickBeforeReport) {
+            this.recordTick();
+        }
+    }
+
+    static class BenchmarkTickProfiler extends TickProfiler {
+
+        BenchmarkTickProfiler(Stress plugin) {
+            super(plugin);
+        }
+
+        @Override
+        public void stop() {
+        }
+
+    }
+
+}
@@ -0,0 +1,439 @@
+package org.popcraft.stress.tps;
+
+import com.sun.management.ThreadMXBean;
+import org.popcraft.stress.BenchmarkPlugin;
+import org.popcraft.stress.Stress;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replays ticks through a tick profiler outside of a server, as fast as they can be recorded or at a fixed rate,
+ * while reader threads generate reports the way commands and exporters do. Ticks come from a tick recording, or are
+ * generated with jitter and lag spikes. This reports how quickly ticks are recorded and what that allocates, how long
+ * each kind of report takes while ticks are being recorded, and how much memory the tick statistics take up.
+ * <p>
+ * Readers check every result they calculate against the replayed ticks, so a result read while a tick was being written
+ * which mixes two states is caught. The replay fails if a reader throws or finds such a result, if recording ticks
+ * allocates more than a kilobyte in total once the first ticks have warmed up the JIT compiler, or if the statistics
+ * after the replay do not match the replayed ticks, so it is also run by the Gradle test task.
+ * <p>
+ * Usage: {@code TickReplay [trace=<recording>] [ticks=<count>] [mspt=<ms>] [jitter=<ms>] [spikes=<chance>]
+ * [spike=<ms>] [seed=<seed>] [readers=<count>] [rate=<ticks per second>] [longest=<interval>]
+ * [warmup=<ticks>]}
+ */
+public class TickReplay {
+
+    private static final String[] OPERATIONS = {"full", "interval", "ticks", "percentiles", "averages", "result",
+            "window"};
+    // Tick times are recorded in whole nanoseconds, so they can be this far from the replayed times in milliseconds
+    private static final double TICK_TIME_TOLERANCE = 1e-5;
+    private static final long MAX_PAUSE_NANOS = 1_000_000;
+    // Until recording a tick has been compiled, the interpreter allocates objects which escape analysis removes later
+    private static final int DEFAULT_WARMUP_TICKS = 50_000;
+    // The JVM can still allocate a few hundred bytes once on the recording thread, inside StampedLock.unlockWrite while
+    // readers are running, which is far less than even one small object per tick over a replay would be
+    private static final long MAX_ALLOCATED_BYTES = 1024;
+
+    private final Map<String, String> args;
+    private double[] tickTimes, tickDurations, tickSleepDurations;
+    // The sum of the durations of the ticks before each tick, to check averages over any range of ticks
+    private double[] sumsOfTickDurations;
+    private int tickCount;
+
+    private TickReplay(Map<String, String> args) {
+        this.args = args;
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                System.err.println("Invalid argument " + arg + ", expected <name>=<value>");
+                System.exit(1);
+            }
+            arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        int status;
+        try {
+            status = new TickReplay(arguments).run() ? 0 : 1;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    private boolean run() throws IOException {
+        String trace = this.args.get("trace");
+        if (trace == null) {
+            this.generate();
+        } else {
+            this.load(new File(trace));
+        }
+        if (this.tickCount < 2) {
+            throw new IllegalArgumentException("Too few ticks to replay: " + this.tickCount);
+        }
+        Map<String, Object> settings = new HashMap<>();
+        if (this.args.containsKey("longest")) {
+            settings.put("tps.intervals.longest", this.args.get("longest"));
+        }
+        int readerCount = this.intArg("readers", 2);
+        double rate = this.doubleArg("rate", 0);
+        int warmupTicks = this.intArg("warmup", Math.min(DEFAULT_WARMUP_TICKS, this.tickCount / 2));
+        if (warmupTicks < 0 || warmupTicks >= this.tickCount) {
+            throw new IllegalArgumentException("Invalid warmup: " + warmupTicks);
+        }
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long heapBefore = usedHeap(memory);
+        this.sumsOfTickDurations = new double[this.tickCount + 1];
+        for (int tick = 0; tick < this.tickCount; ++tick) {
+            this.sumsOfTickDurations[tick + 1] = this.sumsOfTickDurations[tick] + this.tickDurations[tick];
+        }
+        ReplayTickProfiler tickProfiler = new ReplayTickProfiler(BenchmarkPlugin.create(settings));
+        long emptyHeap = usedHeap(memory);
+        BenchmarkPlugin.setTickProfiler(tickProfiler.getPlugin(), tickProfiler);
+        // Readers run until every tick is replayed
+        Reader[] readers = new Reader[readerCount];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < readerCount; ++i) {
+            readers[i] = new Reader(this, tickProfiler, i);
+            readers[i].setUncaughtExceptionHandler((thread, throwable) -> failure.compareAndSet(null, throwable));
+            readers[i].start();
+        }
+        LatencyRecorder recordLatency = new LatencyRecorder();
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long startAllocated = 0;
+        long startTime = System.nanoTime();
+        for (int tick = 0; tick < this.tickCount; ++tick) {
+            if (tick == warmupTicks) {
+                startAllocated = threads.getCurrentThreadAllocatedBytes();
+            }
+            if (rate > 0) {
+                pauseUntil(startTime + (long) (tick * 1e9d / rate));
+            }
+            long recordStart = System.nanoTime();
+            tickProfiler.replay(tick + 1, (long) (this.tickTimes[tick] * 1e6d), this.tickDurations[tick],
+                    (long) (this.tickSleepDurations[tick] * 1e6d));
+            recordLatency.record(System.nanoTime() - recordStart);
+        }
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - startAllocated;
+        for (Reader reader : readers) {
+            reader.running = false;
+        }
+        long checkedResults = 0;
+        LatencyRecorder[] readLatencies = new LatencyRecorder[OPERATIONS.length];
+        Arrays.setAll(readLatencies, i -> new LatencyRecorder());
+        for (Reader reader : readers) {
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            for (int i = 0; i < OPERATIONS.length; ++i) {
+                readLatencies[i].add(reader.latencies[i]);
+            }
+            checkedResults += reader.checkedResults;
+        }
+        long fullHeap = usedHeap(memory);
+        System.out.printf("Replayed %d ticks (%s) with %d readers%n", this.tickCount,
+                trace == null ? "generated" : trace, readerCount);
+        int measuredTicks = this.tickCount - warmupTicks;
+        System.out.printf("Ingestion: %.0f ticks/s, %.0f ns/tick, %.1f bytes/tick allocated after %d warm-up ticks%n",
+                this.tickCount / (elapsed / 1e9d), (double) elapsed / this.tickCount,
+                (double) allocated / measuredTicks, warmupTicks);
+        System.out.println(format("record", recordLatency));
+        for (int i = 0; i < OPERATIONS.length; ++i) {
+            System.out.println(format(OPERATIONS[i], readLatencies[i]));
+        }
+        System.out.printf("Checked %d results read while ticks were recorded%n", checkedResults);
+        System.out.printf("Memory: %.1f MB for the plugin and an empty history, %.1f MB once full (capacity %d)%n",
+                (emptyHeap - heapBefore) / 1e6d, (fullHeap - heapBefore) / 1e6d,
+                tickProfiler.getHistory().getCapacity());
+        boolean passed = true;
+        if (allocated > MAX_ALLOCATED_BYTES) {
+            System.err.printf("Recording %d ticks after warm-up allocated %d bytes, where it should allocate none%n",
+                    measuredTicks, allocated);
+            passed = false;
+        }
+        if (failure.get() != null) {
+            System.err.println("A reader failed:");
+            failure.get().printStackTrace();
+            passed = false;
+        }
+        for (TickInterval tickInterval : tickProfiler.getIntervals().values()) {
+            passed &= this.check(tickInterval);
+        }
+        Reference.reachabilityFence(tickProfiler);
+        return passed;
+    }
+
+    /**
+     * Checks that an interval holds exactly the most recent replayed ticks.
+     */
+    private boolean check(TickInterval tickInterval) {
+        int ticks = Math.min(this.tickCount, tickInterval.getMaxTickCount());
+        double sum = 0, max = 0;
+        for (int tick = this.tickCount - ticks; tick < this.tickCount; ++tick) {
+            sum += this.tickDurations[tick];
+            max = Math.max(max, this.tickDurations[tick]);
+        }
+        double average = sum / ticks;
+        if (tickInterval.getTickCount() != ticks
+                || Math.abs(tickInterval.getAverageTickDuration() - average) > 1e-6 * Math.max(1, average)
+                || tickInterval.getMaxTickDuration() != max) {
+            System.err.printf("Interval %s does not match the replayed ticks: %d ticks, avg %.6f, max %.6f, " +
+                            "expected %d ticks, avg %.6f, max %.6f%n", tickInterval.getName(),
+                    tickInterval.getTickCount(), tickInterval.getAverageTickDuration(),
+                    tickInterval.getMaxTickDuration(), ticks, average, max);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks that a result read while ticks were being recorded matches the replayed ticks it covers, which are the
+     * ticks up to the total tick count it was read at. A result mixing what was read before and after a tick was
+     * written would not match.
+     *
+     * @throws IllegalStateException If the result does not match.
+     */
+    private void check(Result result, TickInterval tickInterval) {
+        if (!result.isValid) {
+            return;
+        }
+        long totalTickCount = result.totalTickCount;
+        int ticks = result.tickCount;
+        if (ticks < 2 || ticks > totalTickCount || totalTickCount > this.tickCount
+                || ticks > tickInterval.getMaxTickCount()) {
+            throw new IllegalStateException(String.format("Torn result for %s: %d ticks at total tick count %d",
+                    tickInterval.getName(), ticks, totalTickCount));
+        }
+        int first = (int) totalTickCount - ticks, last = (int) totalTickCount - 1;
+        double average = (this.sumsOfTickDurations[last + 1] - this.sumsOfTickDurations[first]) / ticks;
+        double epsilon = 1e-6 * Math.max(1, average);
+        boolean matches = Math.abs(result.tickTimeStartMillis - this.tickTimes[first]) <= TICK_TIME_TOLERANCE
+                && Math.abs(result.tickTimeEndMillis - this.tickTimes[last]) <= TICK_TIME_TOLERANCE
+                && result.currentTickDurationMillis == this.tickDurations[last]
+                && Math.abs(result.avgTickDurationMillis - average) <= epsilon
+                && result.minTickDurationMillis <= result.currentTickDurationMillis
+                && result.currentTickDurationMillis <= result.maxTickDurationMillis
+                && result.minTickDurationMillis <= result.avgTickDurationMillis + epsilon
+                && result.avgTickDurationMillis <= result.maxTickDurationMillis + epsilon
+                && result.p50TickDurationMillis <= result.p90TickDurationMillis
+                && result.p90TickDurationMillis <= result.p99TickDurationMillis
+                && result.p99TickDurationMillis <= result.p999TickDurationMillis;
+        if (!matches) {
+            throw new IllegalStateException(String.format("Torn result for %s at total tick count %d: %d ticks " +
+                            "from %.3f to %.3f ms, current %.3f, min %.3f, avg %.6f, max %.3f, percentiles %.3f, " +
+                            "%.3f, %.3f, %.3f, expected ticks from %.3f to %.3f ms, current %.3f, avg %.6f",
+                    tickInterval.getName(), totalTickCount, ticks, result.tickTimeStartMillis,
+                    result.tickTimeEndMillis, result.currentTickDurationMillis, result.minTickDurationMillis,
+                    result.avgTickDurationMillis, result.maxTickDurationMillis, result.p50TickDurationMillis,
+                    result.p90TickDurationMillis, result.p99TickDurationMillis, result.p999TickDurationMillis,
+                    this.tickTimes[first], this.tickTimes[last], this.tickDurations[last], average));
+        }
+    }
+
+    /**
+     * Generates ticks around an average duration, with normally distributed jitter and occasional lag spikes. Ticks
+     * shorter than 50 ms sleep for the rest of the tick, as they would on a server.
+     */
+    private void generate() {
+        this.allocate(this.intArg("ticks", 200_000));
+        double mspt = this.doubleArg("mspt", 30);
+        double jitter = this.doubleArg("jitter", 5);
+        double spikes = this.doubleArg("spikes", 0.001);
+        double spike = this.doubleArg("spike", 500);
+        Random random = new Random(this.intArg("seed", 0));
+        double tickTime = 0;
+        for (int tick = 0; tick < this.tickCount; ++tick) {
+            double tickDuration = Math.max(0.1, mspt + random.nextGaussian() * jitter);
+            if (random.nextDouble() < spikes) {
+                tickDuration += spike * (0.5 + random.nextDouble());
+            }
+            tickTime += Math.max(50, tickDuration);
+            this.tickTimes[tick] = tickTime;
+            this.tickDurations[tick] = tickDuration;
+            this.tickSleepDurations[tick] = Math.max(0, 50 - tickDuration);
+        }
+    }
+
+    /**
+     * Loads every tick of a recording, so that reading it does not count towards the replay.
+     */
+    private void load(File file) throws IOException {
+        this.allocate(1024);
+        this.tickCount = 0;
+        try (TickRecordingReader reader = new TickRecordingReader(file)) {
+            reader.read((tickNumber, tickTime, tickLength, tickDuration, tickSleepDuration) -> {
+                if (this.tickCount == this.tickTimes.length) {
+                    this.tickTimes = Arrays.copyOf(this.tickTimes, this.tickCount * 2);
+                    this.tickDurations = Arrays.copyOf(this.tickDurations, this.tickCount * 2);
+                    this.tickSleepDurations = Arrays.copyOf(this.tickSleepDurations, this.tickCount * 2);
+                }
+                this.tickTimes[this.tickCount] = tickTime;
+                // The profiler counts the whole tick when the duration was not measured
+                this.tickDurations[this.tickCount] = tickDuration == 0 ? tickLength : tickDuration;
+                this.tickSleepDurations[this.tickCount] = tickSleepDuration;
+                ++this.tickCount;
+            });
+        }
+    }
+
+    private void allocate(int ticks) {
+        this.tickCount = ticks;
+        this.tickTimes = new double[ticks];
+        this.tickDurations = new double[ticks];
+        this.tickSleepDurations = new double[ticks];
+    }
+
+    private int intArg(String name, int defaultValue) {
+        String value = this.args.get(name);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private double doubleArg(String name, double defaultValue) {
+        String value = this.args.get(name);
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        // Collecting more than once lets objects with finalizers or references be collected too
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static void pauseUntil(long time) {
+        long remaining;
+        while ((remaining = time - System.nanoTime()) > 0) {
+            if (remaining > MAX_PAUSE_NANOS) {
+                try {
+                    Thread.sleep(remaining / MAX_PAUSE_NANOS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static String format(String operation, LatencyRecorder latency) {
+        return String.format("%-12s %9d calls, latency in us (avg, p50, p99, p99.9, max): %.2f, %.2f, %.2f, %.2f, %.2f",
+                operation, latency.getCount(), latency.getAverage() / 1e3d,
+                latency.getValueAtPercentile(50) / 1e3d, latency.getValueAtPercentile(99) / 1e3d,
+                latency.getValueAtPercentile(99.9) / 1e3d, latency.getMax() / 1e3d);
+    }
+
+    /**
+     * Generates every kind of report in turn, timing each one, and checks every result of an interval or a window of
+     * one against the replayed ticks.
+     */
+    private static class Reader extends Thread {
+
+        private final TickReplay replay;
+        private final TickProfiler tickProfiler;
+        private final TickInterval[] tickIntervals;
+        private final LatencyRecorder[] latencies = new LatencyRecorder[OPERATIONS.length];
+        private volatile boolean running = true;
+        // Reports are kept so they cannot be optimized away
+        private int reportLength;
+        private long checkedResults;
+
+        private Reader(TickReplay replay, TickProfiler tickProfiler, int index) {
+            super("Tick Replay Reader " + index);
+            this.replay = replay;
+            this.tickProfiler = tickProfiler;
+            this.tickIntervals = tickProfiler.getIntervals().values().toArray(new TickInterval[0]);
+            Arrays.setAll(this.latencies, i -> new LatencyRecorder());
+        }
+
+        @Override
+        public void run() {
+            int operation = 0, interval = 0;
+            while (this.running) {
+                TickInterval tickInterval = this.tickIntervals[interval];
+                Result result = null;
+                long start = System.nanoTime();
+                switch (operation) {
+                    case 0:
+                        this.reportLength += this.tickProfiler.tpsReport().length();
+                        break;
+                    case 1:
+                        this.reportLength += this.tickProfiler.tpsReport("longest").length();
+                        break;
+                    case 2:
+                        this.reportLength += this.tickProfiler.tpsReport(1200).length();
+                        break;
+                    case 3:
+                        this.reportLength += this.tickProfiler.tpsPercentilesReport().length();
+                        break;
+                    case 4:
+                        this.reportLength += this.tickProfiler.tpsAveragesReport().length();
+                        break;
+                    case 5:
+                        result = tickInterval.getResult();
+                        break;
+                    default:
+                        result = new Result(tickInterval, 1200);
+                        break;
+                }
+                this.latencies[operation].record(System.nanoTime() - start);
+                if (result != null) {
+                    this.replay.check(result, tickInterval);
+                    ++this.checkedResults;
+                    interval = (interval + 1) % this.tickIntervals.length;
+                }
+                operation = (operation + 1) % OPERATIONS.length;
+            }
+        }
+
+    }
+
+    /**
+     * A tick profiler which is given ticks directly, instead of listening for them on a server.
+     */
+    private static class ReplayTickProfiler extends TickProfiler {
+
+        private ReplayTickProfiler(Stress plugin) {
+            super(plugin);
+        }
+
+        private void replay(int tickNumber, long tickTime, double tickDuration, long tickSleepDuration) {
+            this.update(tickNumber, tickTime, tickDuration, tickSleepDuration);
+        }
+
+        private Stress getPlugin() {
+            return this.plugin;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package org.popcraft.stress.tps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.popcraft.stress.BenchmarkPlugin;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures formatting TPS and tick durations with their colors, which every report does many times.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TpsUtilBenchmark {
+
+    private static final int VALUES = 1024;
+
+    private final double[] tpsValues = new double[VALUES];
+    private final double[] tickValues = new double[VALUES];
+    private int index;
+
+    @Setup
+    public void setup() {
+        BenchmarkPlugin.create(Collections.emptyMap());
+        Random random = new Random(0);
+        for (int i = 0; i < VALUES; ++i) {
+            this.tpsValues[i] = 10 + random.nextDouble() * 10;
+            this.tickValues[i] = random.nextDouble() * 100;
+        }
+    }
+
+    @Benchmark
+    public String formatTps() {
+        return TpsUtil.formatTps(this.tpsValues[this.index++ & (VALUES - 1)]);
+    }
+
+    @Benchmark
+    public String formatTick() {
+        return TpsUtil.formatTick(this.tickValues[this.index++ & (VALUES - 1)]);
+    }
+
+}
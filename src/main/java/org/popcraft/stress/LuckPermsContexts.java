@@ -10,66 +10,104 @@ import org.bukkit.entity.Player;
 import org.bukkit.plugin.RegisteredServiceProvider;
 
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 public class LuckPermsContexts {
     private static LuckPerms luckPerms;
     private static Set<ContextCalculator<Player>> contextCalculators;
     private static final String tpsAboveKey = "stress:tps-above";
     private static final String tpsBelowKey = "stress:tps-below";
-
-    static {
-        RegisteredServiceProvider<LuckPerms> provider = Bukkit.getServicesManager().getRegistration(LuckPerms.class);
-        if (provider != null) {
-            luckPerms = provider.getProvider();
-            contextCalculators = new HashSet<>();
-        }
-    }
+    private static final int maxTps = 21;
+    // Context sets for every whole TPS value, which are built once and swapped when the TPS changes
+    private static ImmutableContextSet[] tpsAboveContexts, tpsBelowContexts;
+    private static ImmutableContextSet tpsAbovePotentialContexts, tpsBelowPotentialContexts;
+    private static volatile int currentTps;
+    private static int updateTaskId = -1;
 
     public static void register() {
-        if (luckPerms == null) {
+        // The service is looked up here rather than when the class loads, so the calculators can be used on their own
+        RegisteredServiceProvider<LuckPerms> provider = Bukkit.getServicesManager().getRegistration(LuckPerms.class);
+        if (provider == null) {
             return;
         }
-        ContextCalculator<Player> contextTPSAbove = new ContextCalculator<Player>() {
-            @Override
-            public void calculate(Player target, ContextConsumer consumer) {
-                int currentTps = (int) Math.floor(Stress.getPlugin().getTickProfiler().getInterval("shortest").getResult().tps);
-                List<String> tpsValues = IntStream.range(currentTps, 22).mapToObj(Integer::toString).collect(Collectors.toList());
-                tpsValues.forEach(value -> consumer.accept(tpsAboveKey, value));
-            }
-
-            @Override
-            public ContextSet estimatePotentialContexts() {
-                return ImmutableContextSet.empty();
-            }
-        };
+        luckPerms = provider.getProvider();
+        contextCalculators = new HashSet<>();
+        buildContexts();
+        currentTps = calculateCurrentTps();
+        ContextCalculator<Player> contextTPSAbove = new TpsContextCalculator(true);
         luckPerms.getContextManager().registerCalculator(contextTPSAbove);
         contextCalculators.add(contextTPSAbove);
-        ContextCalculator<Player> contextTPSBelow = new ContextCalculator<Player>() {
-            @Override
-            public void calculate(Player target, ContextConsumer consumer) {
-                int currentTps = (int) Math.floor(Stress.getPlugin().getTickProfiler().getInterval("shortest").getResult().tps);
-                List<String> tpsValues = IntStream.range(0, currentTps + 1).mapToObj(Integer::toString).collect(Collectors.toList());
-                tpsValues.forEach(value -> consumer.accept(tpsBelowKey, value));
-            }
-
-            @Override
-            public ContextSet estimatePotentialContexts() {
-                return ImmutableContextSet.empty();
-            }
-        };
+        ContextCalculator<Player> contextTPSBelow = new TpsContextCalculator(false);
         luckPerms.getContextManager().registerCalculator(contextTPSBelow);
         contextCalculators.add(contextTPSBelow);
+        // Only check for a new whole TPS value once per second, and only invalidate contexts when it changes
+        updateTaskId = Bukkit.getScheduler().scheduleSyncRepeatingTask(Stress.getPlugin(), () -> {
+            int tps = calculateCurrentTps();
+            if (tps != currentTps) {
+                currentTps = tps;
+                Bukkit.getOnlinePlayers().forEach(player -> luckPerms.getContextManager().signalContextUpdate(player));
+            }
+        }, 20, 20);
     }
 
     public static void unregister() {
         if (luckPerms == null) {
             return;
         }
+        if (updateTaskId != -1) {
+            Bukkit.getScheduler().cancelTask(updateTaskId);
+            updateTaskId = -1;
+        }
         contextCalculators.forEach(contextCalculator -> luckPerms.getContextManager().unregisterCalculator(contextCalculator));
         contextCalculators.clear();
+        luckPerms = null;
+    }
+
+    static void buildContexts() {
+        tpsAboveContexts = new ImmutableContextSet[maxTps + 1];
+        tpsBelowContexts = new ImmutableContextSet[maxTps + 1];
+        for (int tps = 0; tps <= maxTps; ++tps) {
+            ImmutableContextSet.Builder tpsAbove = ImmutableContextSet.builder();
+            for (int value = tps; value <= maxTps; ++value) {
+                tpsAbove.add(tpsAboveKey, Integer.toString(value));
+            }
+            tpsAboveContexts[tps] = tpsAbove.build();
+            ImmutableContextSet.Builder tpsBelow = ImmutableContextSet.builder();
+            for (int value = 0; value <= tps; ++value) {
+                tpsBelow.add(tpsBelowKey, Integer.toString(value));
+            }
+            tpsBelowContexts[tps] = tpsBelow.build();
+        }
+        tpsAbovePotentialContexts = tpsAboveContexts[0];
+        tpsBelowPotentialContexts = tpsBelowContexts[maxTps];
+    }
+
+    static int calculateCurrentTps() {
+        double tps = Stress.getPlugin().getTickProfiler().getInterval("shortest").getResult().tps;
+        return (int) Math.max(0, Math.min(maxTps, Math.floor(tps)));
+    }
+
+    static void setCurrentTps(int tps) {
+        currentTps = tps;
+    }
+
+    static class TpsContextCalculator implements ContextCalculator<Player> {
+
+        private final boolean above;
+
+        TpsContextCalculator(boolean above) {
+            this.above = above;
+        }
+
+        @Override
+        public void calculate(Player target, ContextConsumer consumer) {
+            consumer.accept(this.above ? tpsAboveContexts[currentTps] : tpsBelowContexts[currentTps]);
+        }
+
+        @Override
+        public ContextSet estimatePotentialContexts() {
+            return this.above ? tpsAbovePotentialContexts : tpsBelowPotentialContexts;
+        }
+
     }
 }
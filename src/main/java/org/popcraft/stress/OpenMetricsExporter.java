@@ -0,0 +1,264 @@
+package org.popcraft.stress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.popcraft.stress.tps.EwmaInterval;
+import org.popcraft.stress.tps.Result;
+import org.popcraft.stress.tps.TickHistogram;
+import org.popcraft.stress.tps.TickInterval;
+import org.popcraft.stress.tps.TickProfiler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class OpenMetricsExporter implements HttpHandler {
+
+    private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    // Upper bounds of the tick duration histogram buckets, in milliseconds
+    private static final double[] BUCKET_BOUNDS_MILLIS = {5, 10, 20, 30, 40, 45, 50, 55, 60, 75, 100, 150, 200, 300,
+            500, 1000, 2000, 5000};
+    private static final int[] BUCKET_BOUNDS = new int[BUCKET_BOUNDS_MILLIS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_BOUNDS.length; ++i) {
+            BUCKET_BOUNDS[i] = TickHistogram.bucketOf(BUCKET_BOUNDS_MILLIS[i]);
+        }
+    }
+
+    private final TickProfiler tickProfiler;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // Scrapes are handled one at a time on a single thread, so these are reused for every response
+    private final StringBuilder body = new StringBuilder(1 << 14);
+    private byte[] bytes = new byte[1 << 14];
+    private final long[] bucketCounts = new long[BUCKET_BOUNDS.length];
+    private final double[] intervalValues = new double[3];
+
+    /**
+     * Create an exporter, which serves tick statistics in the OpenMetrics text format on /metrics. Everything is read
+     * without locking the tick history, so scrapes never wait for or hold up the main thread.
+     *
+     * @param tickProfiler The tick profiler to export.
+     * @param address      The address to bind to.
+     * @param port         The port to bind to.
+     * @throws IOException If the server could not be bound.
+     */
+    public OpenMetricsExporter(TickProfiler tickProfiler, String address, int port) throws IOException {
+        this.tickProfiler = tickProfiler;
+        this.server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        this.server.createContext("/metrics", this);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Stress Metrics Exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(this.executor);
+    }
+
+    /**
+     * Starts serving metrics.
+     */
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * Stops serving metrics.
+     */
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdown();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            int length = this.encode(this.build());
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(this.bytes, 0, length);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Builds the response body into the reused builder.
+     *
+     * @return The response body.
+     */
+    private StringBuilder build() {
+        StringBuilder body = this.body;
+        body.setLength(0);
+        Map<String, TickInterval> tickIntervals = this.tickProfiler.getIntervals();
+        body.append("# TYPE stress_ticks counter\n");
+        body.append("# HELP stress_ticks Ticks recorded since the server started.\n");
+        body.append("stress_ticks_total ").append(this.tickProfiler.getHistory().getTotalTickCount()).append('\n');
+        body.append("# TYPE stress_tps gauge\n");
+        body.append("# HELP stress_tps Ticks per second over each tick interval.\n");
+        for (Map.Entry<String, TickInterval> entry : tickIntervals.entrySet()) {
+            Result result = entry.getValue().getResult();
+            if (result.isValid) {
+                this.appendSample(body, "stress_tps", entry.getKey(), Double.NaN, result.tps);
+            }
+        }
+        body.append("# TYPE stress_mspt gauge\n");
+        body.append("# HELP stress_mspt Average tick duration in milliseconds over each tick interval.\n");
+        for (Map.Entry<String, TickInterval> entry : tickIntervals.entrySet()) {
+            Result result = entry.getValue().getResult();
+            if (result.isValid) {
+                this.appendSample(body, "stress_mspt", entry.getKey(), Double.NaN, result.avgTickDurationMillis);
+            }
+        }
+        // Ticks leave the window of a tick interval as new ones are recorded, so the counts can go down
+        body.append("# TYPE stress_tick_duration_seconds gaugehistogram\n");
+        body.append("# HELP stress_tick_duration_seconds Tick durations over each tick interval.\n");
+        for (Map.Entry<String, TickInterval> entry : tickIntervals.entrySet()) {
+            TickInterval tickInterval = entry.getValue();
+            tickInterval.getHistory().read(() -> this.readHistogram(tickInterval));
+            long tickCount = (long) this.intervalValues[0];
+            if (tickCount == 0) {
+                continue;
+            }
+            for (int i = 0; i < BUCKET_BOUNDS.length; ++i) {
+                this.appendSample(body, "stress_tick_duration_seconds_bucket", entry.getKey(),
+                        BUCKET_BOUNDS_MILLIS[i] / 1e3d, this.bucketCounts[i]);
+            }
+            this.appendSample(body, "stress_tick_duration_seconds_bucket", entry.getKey(),
+                    Double.POSITIVE_INFINITY, tickCount);
+            this.appendSample(body, "stress_tick_duration_seconds_gcount", entry.getKey(), Double.NaN, tickCount);
+            this.appendSample(body, "stress_tick_duration_seconds_gsum", entry.getKey(), Double.NaN,
+                    this.intervalValues[1] / 1e3d);
+        }
+        EwmaInterval[] ewmaIntervals = this.tickProfiler.getEwmaIntervals();
+        if (ewmaIntervals.length > 0) {
+            body.append("# TYPE stress_tps_average gauge\n");
+            body.append("# HELP stress_tps_average Exponentially weighted moving average of ticks per second.\n");
+            for (EwmaInterval ewmaInterval : ewmaIntervals) {
+                this.tickProfiler.getHistory().read(() -> this.readAverages(ewmaInterval));
+                if (this.intervalValues[2] > 0) {
+                    this.appendSample(body, "stress_tps_average", ewmaInterval.getShortName(), Double.NaN,
+                            this.intervalValues[0]);
+                }
+            }
+            body.append("# TYPE stress_mspt_average gauge\n");
+            body.append("# HELP stress_mspt_average Exponentially weighted moving average of the tick duration in "
+                    + "milliseconds.\n");
+            for (EwmaInterval ewmaInterval : ewmaIntervals) {
+                this.tickProfiler.getHistory().read(() -> this.readAverages(ewmaInterval));
+                if (this.intervalValues[2] > 0) {
+                    this.appendSample(body, "stress_mspt_average", ewmaInterval.getShortName(), Double.NaN,
+                            this.intervalValues[1]);
+                }
+            }
+        }
+        body.append("# EOF\n");
+        return body;
+    }
+
+    /**
+     * Reads the cumulative bucket counts, tick count and sum of tick durations of a tick interval. This may be
+     * repeated if a tick is recorded while reading.
+     *
+     * @param tickInterval The tick interval.
+     */
+    private void readHistogram(TickInterval tickInterval) {
+        TickHistogram histogram = tickInterval.getHistogram();
+        long count = 0;
+        int bound = 0;
+        for (int bucket = 0; bucket < TickHistogram.getBucketCount() && bound < BUCKET_BOUNDS.length; ++bucket) {
+            count += histogram.getCount(bucket);
+            while (bound < BUCKET_BOUNDS.length && BUCKET_BOUNDS[bound] == bucket) {
+                this.bucketCounts[bound++] = count;
+            }
+        }
+        this.intervalValues[0] = tickInterval.getTickCount();
+        this.intervalValues[1] = tickInterval.getAverageTickDuration() * tickInterval.getTickCount();
+    }
+
+    /**
+     * Reads the moving averages of an interval. This may be repeated if a tick is recorded while reading.
+     *
+     * @param ewmaInterval The moving average interval.
+     */
+    private void readAverages(EwmaInterval ewmaInterval) {
+        boolean valid = ewmaInterval.isValid();
+        this.intervalValues[0] = valid ? ewmaInterval.getTps() : 0;
+        this.intervalValues[1] = valid ? ewmaInterval.getAverageTickDuration() : 0;
+        this.intervalValues[2] = valid ? 1 : 0;
+    }
+
+    private void appendSample(StringBuilder body, String name, String interval, double le, double value) {
+        body.append(name).append("{interval=\"");
+        for (int i = 0; i < interval.length(); ++i) {
+            char c = interval.charAt(i);
+            if (c == '"' || c == '\\') {
+                body.append('\\');
+            }
+            body.append(c == '\n' ? ' ' : c);
+        }
+        body.append('"');
+        if (!Double.isNaN(le)) {
+            body.append(",le=\"");
+            if (le == Double.POSITIVE_INFINITY) {
+                body.append("+Inf");
+            } else {
+                body.append(le);
+            }
+            body.append('"');
+        }
+        body.append("} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            body.append((long) value);
+        } else {
+            body.append(value);
+        }
+        body.append('\n');
+    }
+
+    /**
+     * Encodes the response body into the reused byte array. Everything written is ASCII, except for interval names,
+     * which are encoded as UTF-8.
+     *
+     * @param body The response body.
+     * @return The number of bytes.
+     */
+    private int encode(StringBuilder body) {
+        int maxLength = body.length() * 3;
+        if (this.bytes.length < maxLength) {
+            this.bytes = new byte[maxLength];
+        }
+        int length = 0;
+        for (int i = 0; i < body.length(); ++i) {
+            char c = body.charAt(i);
+            if (c < 0x80) {
+                this.bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                this.bytes[length++] = (byte) (0xC0 | (c >> 6));
+                this.bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                // Surrogate pairs are not expected in interval names, so they are encoded one char at a time
+                this.bytes[length++] = (byte) (0xE0 | (c >> 12));
+                this.bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                this.bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return length;
+    }
+
+}
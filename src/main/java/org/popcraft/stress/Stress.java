@@ -8,17 +8,27 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.popcraft.stress.jfr.JfrTickListener;
 import org.popcraft.stress.test.ChunkGenTest;
 import org.popcraft.stress.test.ChunkLoadTest;
 import org.popcraft.stress.test.CommandTest;
 import org.popcraft.stress.test.EntityTest;
+import org.popcraft.stress.test.HistoryTest;
 import org.popcraft.stress.test.InvalidTest;
+import org.popcraft.stress.test.PluginsTest;
+import org.popcraft.stress.test.RecordTest;
+import org.popcraft.stress.test.SamplerTest;
 import org.popcraft.stress.test.Test;
 import org.popcraft.stress.test.TicksTest;
 import org.popcraft.stress.test.TpsTest;
 import org.popcraft.stress.tps.BukkitSchedulerTickProfiler;
+import org.popcraft.stress.tps.LagSpikeSampler;
+import org.popcraft.stress.tps.PluginAttribution;
 import org.popcraft.stress.tps.ServerTickEndEventTickProfiler;
+import org.popcraft.stress.tps.TickBaselines;
+import org.popcraft.stress.tps.TickLog;
 import org.popcraft.stress.tps.TickProfiler;
+import org.popcraft.stress.tps.TpsUtil;
 
 import java.io.File;
 import java.io.IOException;
@@ -38,6 +48,10 @@ public final class Stress extends JavaPlugin {
     private YamlConfiguration defaultLocale, customLocale;
     private TickProfiler tickProfiler;
     private Map<String, Test> tests;
+    private OpenMetricsExporter metricsExporter;
+    private LagSpikeSampler lagSpikeSampler;
+    private PluginAttribution pluginAttribution;
+    private TickBaselines tickBaselines;
 
     @Override
     public void onEnable() {
@@ -47,6 +61,8 @@ public final class Stress extends JavaPlugin {
         this.saveConfig();
         // Load locales
         this.loadLocales();
+        // Compile formatting options
+        TpsUtil.loadConfig(this);
         // Start profiler
         String tickProfilerImplementation = this.getConfig().getString("tps.implementation", "auto");
         if ("BukkitScheduler".equals(tickProfilerImplementation)) {
@@ -59,6 +75,45 @@ public final class Stress extends JavaPlugin {
                 this.tickProfiler = new BukkitSchedulerTickProfiler(this);
             }
         }
+        // Reload the tick history from before the last restart, and keep saving it
+        if (this.getConfig().getBoolean("history.enabled", true)) {
+            TickLog tickLog = new TickLog(new File(this.getDataFolder(), "history"),
+                    this.getConfig().getLong("history.segment-size", 4) * 1024 * 1024,
+                    TpsUtil.timeIntervalToTicks(this.getConfig().getString("history.rotate", "1 hours")) * 50L,
+                    TpsUtil.timeIntervalToTicks(this.getConfig().getString("history.retention", "24 hours")) * 50L,
+                    this.getLogger());
+            try {
+                long loadedTicks = this.tickProfiler.loadHistory(tickLog);
+                if (loadedTicks > 0) {
+                    this.getLogger().info("Loaded " + loadedTicks + " ticks from the tick history.");
+                }
+            } catch (IOException e) {
+                this.getLogger().warning("Unable to load the tick history.");
+            }
+            this.tickProfiler.setTickLog(tickLog);
+        }
+        // Emit tick events to Java Flight Recorder, which cost nothing unless a recording is enabled for them
+        this.tickProfiler.addTickListener(new JfrTickListener());
+        // Sample the main thread, so that the cause of lag spikes can be found
+        if (this.getConfig().getBoolean("sampler.enabled", false)) {
+            this.lagSpikeSampler = new LagSpikeSampler(Thread.currentThread(), new File(this.getDataFolder(), "lag"),
+                    this.getLogger(),
+                    this.getConfig().getDouble("sampler.interval", 2),
+                    this.getConfig().getDouble("sampler.threshold", 100),
+                    this.getConfig().getInt("sampler.buffer", 4096),
+                    this.getConfig().getDouble("sampler.max-overhead", 1) / 100,
+                    this.getConfig().getLong("sampler.cooldown", 10) * 1000);
+            this.tickProfiler.addTickListener(this.lagSpikeSampler);
+            this.lagSpikeSampler.start();
+        }
+        // Attribute main thread time to the plugins whose listeners take it
+        if (this.getConfig().getBoolean("attribution.enabled", false)) {
+            this.pluginAttribution = new PluginAttribution(this, this.tickProfiler.getHistory());
+            this.tickProfiler.addTickListener(this.pluginAttribution);
+            this.pluginAttribution.attach();
+        }
+        // Keep baselines that test runs can be compared with
+        this.tickBaselines = new TickBaselines(new File(this.getDataFolder(), "baselines"), this.getLogger());
         // Initialize test classes
         this.tests = new HashMap<>();
         this.addTests(
@@ -66,6 +121,10 @@ public final class Stress extends JavaPlugin {
                 new ChunkLoadTest(this),
                 new CommandTest(this),
                 new EntityTest(this),
+                new HistoryTest(this),
+                new PluginsTest(this),
+                new RecordTest(this),
+                new SamplerTest(this),
                 new TicksTest(this),
                 new TpsTest(this)
         );
@@ -73,6 +132,17 @@ public final class Stress extends JavaPlugin {
         if (this.getConfig().getBoolean("debug", false)) {
             Bukkit.getScheduler().runTaskTimerAsynchronously(this, tickProfiler::tpsDebug, 20, 20);
         }
+        // Serve tick statistics to monitoring systems
+        if (this.getConfig().getBoolean("metrics.enabled", false)) {
+            String address = this.getConfig().getString("metrics.address", "127.0.0.1");
+            int port = this.getConfig().getInt("metrics.port", 9940);
+            try {
+                this.metricsExporter = new OpenMetricsExporter(this.tickProfiler, address, port);
+                this.metricsExporter.start();
+            } catch (IOException e) {
+                this.getLogger().warning("Unable to start the metrics exporter on " + address + ":" + port + ".");
+            }
+        }
         // Enable bStats metrics
         new Metrics(this, 7063);
         // Register LuckPerms contexts
@@ -84,6 +154,35 @@ public final class Stress extends JavaPlugin {
     @Override
     public void onDisable() {
         tickProfiler.stop();
+        // Stop sampling the main thread
+        if (lagSpikeSampler != null) {
+            tickProfiler.removeTickListener(lagSpikeSampler);
+            lagSpikeSampler.stop();
+            lagSpikeSampler = null;
+        }
+        // Put back the original listeners
+        if (pluginAttribution != null) {
+            tickProfiler.removeTickListener(pluginAttribution);
+            pluginAttribution.detach();
+            pluginAttribution = null;
+        }
+        // Stop serving tick statistics
+        if (metricsExporter != null) {
+            metricsExporter.stop();
+            metricsExporter = null;
+        }
+        // Finish any recording in progress
+        try {
+            ((RecordTest) this.tests.get("record")).stop();
+        } catch (IOException e) {
+            this.getLogger().warning("Unable to finish the tick recording.");
+        }
+        // Flush the tick history
+        TickLog tickLog = tickProfiler.getTickLog();
+        if (tickLog != null) {
+            tickProfiler.setTickLog(null);
+            tickLog.close();
+        }
         // Unregister LuckPerms contexts
         if (serverSupportsContexts()) {
             LuckPermsContexts.unregister();
@@ -133,6 +232,18 @@ public final class Stress extends JavaPlugin {
         return tickProfiler;
     }
 
+    public LagSpikeSampler getLagSpikeSampler() {
+        return lagSpikeSampler;
+    }
+
+    public PluginAttribution getPluginAttribution() {
+        return pluginAttribution;
+    }
+
+    public TickBaselines getTickBaselines() {
+        return tickBaselines;
+    }
+
     public Map<String, Test> getTests() {
         return tests;
     }
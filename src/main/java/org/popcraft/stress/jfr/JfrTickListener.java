@@ -0,0 +1,36 @@
+package org.popcraft.stress.jfr;
+
+import jdk.jfr.EventType;
+import org.popcraft.stress.tps.TickListener;
+
+public class JfrTickListener implements TickListener {
+
+    private static final EventType EVENT_TYPE = EventType.getEventType(TickEvent.class);
+
+    // The event for the tick in progress, which began when the last tick ended
+    private TickEvent event;
+
+    /**
+     * Commits an event for the tick which just ended, and begins one for the next tick. Nothing is allocated unless
+     * a recording is enabled for tick events.
+     */
+    @Override
+    public void onTick(int tickNumber, double tickTime, double tickLength, double tickDuration,
+                       double tickSleepDuration) {
+        if (!EVENT_TYPE.isEnabled()) {
+            this.event = null;
+            return;
+        }
+        TickEvent event = this.event;
+        if (event != null) {
+            event.tickNumber = tickNumber;
+            event.tickLength = (long) (tickLength * 1e6d);
+            event.tickDuration = (long) (tickDuration * 1e6d);
+            event.tickSleepDuration = (long) (tickSleepDuration * 1e6d);
+            event.commit();
+        }
+        this.event = new TickEvent();
+        this.event.begin();
+    }
+
+}
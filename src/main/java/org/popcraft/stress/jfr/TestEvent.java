@@ -0,0 +1,56 @@
+package org.popcraft.stress.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.popcraft.stress.Test")
+@Label("Stress Test")
+@Category({"Stress", "Tests"})
+@Description("A stress test, which spans from when the test started to when it finished.")
+@StackTrace(false)
+public class TestEvent extends Event {
+
+    private static final EventType EVENT_TYPE = EventType.getEventType(TestEvent.class);
+
+    @Label("Test")
+    public String test;
+
+    @Label("Parameters")
+    public String parameters;
+
+    /**
+     * Begins a test event, if a recording is enabled for it.
+     *
+     * @param test       The test name.
+     * @param parameters The test parameters.
+     * @return The event, or null if it is not being recorded.
+     */
+    public static TestEvent begin(String test, String parameters) {
+        if (!EVENT_TYPE.isEnabled()) {
+            return null;
+        }
+        TestEvent event = new TestEvent();
+        event.test = test;
+        event.parameters = parameters;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits a test event.
+     *
+     * @param event The event, which may be null if it was not being recorded.
+     */
+    public static void end(TestEvent event) {
+        if (event != null) {
+            event.end();
+            event.commit();
+        }
+    }
+
+}
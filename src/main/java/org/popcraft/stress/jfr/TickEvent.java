@@ -0,0 +1,36 @@
+package org.popcraft.stress.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("org.popcraft.stress.Tick")
+@Label("Server Tick")
+@Category({"Stress", "Ticks"})
+@Description("A server tick, which spans from the end of the previous tick to the end of this one.")
+@StackTrace(false)
+public class TickEvent extends Event {
+
+    @Label("Tick Number")
+    public int tickNumber;
+
+    @Label("Tick Length")
+    @Description("The tick duration including sleep time.")
+    @Timespan(Timespan.NANOSECONDS)
+    public long tickLength;
+
+    @Label("Tick Duration")
+    @Description("The time spent processing the tick.")
+    @Timespan(Timespan.NANOSECONDS)
+    public long tickDuration;
+
+    @Label("Tick Sleep Duration")
+    @Description("The time remaining before the next tick, if known.")
+    @Timespan(Timespan.NANOSECONDS)
+    public long tickSleepDuration;
+
+}
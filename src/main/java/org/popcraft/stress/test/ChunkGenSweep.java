@@ -0,0 +1,183 @@
+package org.popcraft.stress.test;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.popcraft.stress.Stress;
+import org.popcraft.stress.tps.TickHistory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.PrimitiveIterator;
+
+public class ChunkGenSweep {
+
+    // Ticks to wait between levels, so that chunks finishing up from one level do not count towards the next
+    private static final int PAUSE_TICKS = 40;
+    // Doubling the chunks in flight must raise throughput by at least this much to count as still scaling
+    private static final double MIN_SCALING = 0.1;
+    // A main thread averaging ticks this long has no time left to spare for more chunks
+    private static final double BUSY_MSPT = 45;
+
+    private final Stress plugin;
+    private final CommandSender sender;
+    private final World world;
+    private final RegionSpiral spiral;
+    private final RegionScanner regionScanner;
+    private final int regionsPerLevel;
+    private final int[] levels;
+    private final double[] chunksPerSecond, averageMspt;
+    // Without tick durations, the main thread can not be told apart from the time between ticks
+    private final boolean measuresTickDuration;
+    private final List<String> rows = new ArrayList<>();
+    private Runnable onFinish;
+
+    /**
+     * Create a sweep which generates fresh regions with a fixed number of chunks in flight, doubling the number at
+     * every level from one up to a maximum. Each level generates its own regions, taken from a spiral around a centre
+     * region, so that no level loads chunks which an earlier level generated.
+     *
+     * @param plugin          The plugin.
+     * @param sender          The sender to report each level to.
+     * @param world           The world to generate chunks in.
+     * @param centreX         The centre region x coordinate.
+     * @param centreZ         The centre region z coordinate.
+     * @param maxInFlight     The number of chunks in flight at the last level.
+     * @param regionsPerLevel The number of regions to generate at each level.
+     */
+    public ChunkGenSweep(Stress plugin, CommandSender sender, World world, int centreX, int centreZ, int maxInFlight,
+                         int regionsPerLevel) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.world = world;
+        this.spiral = new RegionSpiral(centreX, centreZ);
+        this.regionScanner = new RegionScanner(plugin, world);
+        this.regionsPerLevel = regionsPerLevel;
+        List<Integer> levels = new ArrayList<>();
+        for (int level = 1; level < maxInFlight; level *= 2) {
+            levels.add(level);
+        }
+        levels.add(maxInFlight);
+        this.levels = levels.stream().mapToInt(Integer::intValue).toArray();
+        this.chunksPerSecond = new double[this.levels.length];
+        this.averageMspt = new double[this.levels.length];
+        this.measuresTickDuration = plugin.getTickProfiler().measuresTickDuration();
+    }
+
+    /**
+     * Starts the first level on the next tick. This must be called on the main thread.
+     *
+     * @param onFinish Called on the main thread once every level has finished, or the sweep ran out of regions.
+     */
+    public void start(Runnable onFinish) {
+        this.onFinish = onFinish;
+        this.rows.add("in_flight,chunks,chunks_per_second,avg_mspt,max_mspt,p50_latency_ms,p99_latency_ms");
+        sender.sendMessage(plugin.getMessage("test.chunkgen.sweep.header"));
+        Bukkit.getScheduler().runTask(plugin, () -> this.runLevel(0));
+    }
+
+    private void runLevel(int level) {
+        this.regionScanner.findFresh(this.spiral, this.regionsPerLevel, regions -> {
+            if (regions.size() < this.regionsPerLevel) {
+                sender.sendMessage(plugin.getMessage("test.chunkgen.sweep.no-regions"));
+                this.finish(level);
+                return;
+            }
+            this.runLevel(level, regions.stream()
+                    .flatMapToLong(regionKey -> ChunkGenTest.regionChunkStream((int) (long) regionKey,
+                            (int) (regionKey >> 32)))
+                    .iterator());
+        });
+    }
+
+    private void runLevel(int level, PrimitiveIterator.OfLong chunks) {
+        TickHistory history = plugin.getTickProfiler().getHistory();
+        long startSequence = history.getTotalTickCount();
+        int inFlight = this.levels[level];
+        ChunkLoader chunkLoader = new ChunkLoader(plugin, this.world, chunks, inFlight, inFlight, 0);
+        chunkLoader.start(() -> {
+            long endSequence = history.getTotalTickCount();
+            boolean hasTicks = endSequence > startSequence && history.contains(startSequence);
+            double averageMspt = hasTicks ?
+                    history.getSumOfTickDurations(startSequence, endSequence) / (endSequence - startSequence) : 0;
+            double maxMspt = hasTicks ? history.getMaxTickDuration(startSequence, endSequence) : 0;
+            this.chunksPerSecond[level] = chunkLoader.getChunksPerSecond();
+            this.averageMspt[level] = averageMspt;
+            sender.sendMessage(plugin.getMessage("test.chunkgen.sweep.level",
+                    inFlight,
+                    this.chunksPerSecond[level],
+                    averageMspt,
+                    maxMspt,
+                    chunkLoader.getLatencyPercentile(50),
+                    chunkLoader.getLatencyPercentile(99)));
+            // Tick lengths are not tick durations, so the columns are left empty rather than filled with them
+            String msptColumns = this.measuresTickDuration ?
+                    String.format(Locale.ROOT, "%.3f,%.3f", averageMspt, maxMspt) : ",";
+            this.rows.add(String.format(Locale.ROOT, "%d,%d,%.2f,%s,%.3f,%.3f", inFlight,
+                    chunkLoader.getCompleted(), this.chunksPerSecond[level], msptColumns,
+                    chunkLoader.getLatencyPercentile(50), chunkLoader.getLatencyPercentile(99)));
+            if (level + 1 < this.levels.length) {
+                Bukkit.getScheduler().runTaskLater(plugin, () -> this.runLevel(level + 1), PAUSE_TICKS);
+            } else {
+                this.finish(level + 1);
+            }
+        });
+    }
+
+    /**
+     * Reports where throughput stopped scaling and what limited it, and saves every level that finished.
+     *
+     * @param levelCount The number of levels that finished.
+     */
+    private void finish(int levelCount) {
+        if (levelCount > 0) {
+            // The knee is the last level before doubling the chunks in flight stopped paying off
+            int knee = -1;
+            for (int level = 1; level < levelCount && knee < 0; ++level) {
+                if (this.chunksPerSecond[level] < this.chunksPerSecond[level - 1] * (1 + MIN_SCALING)) {
+                    knee = level - 1;
+                }
+            }
+            if (knee < 0) {
+                sender.sendMessage(plugin.getMessage("test.chunkgen.sweep.no-knee", this.levels[levelCount - 1]));
+            } else {
+                sender.sendMessage(plugin.getMessage("test.chunkgen.sweep.knee", this.levels[knee],
+                        this.chunksPerSecond[knee]));
+                // Whether the main thread kept up with the level that did not pay off shows what held it back
+                double averageMspt = this.averageMspt[knee + 1];
+                if (!this.measuresTickDuration) {
+                    sender.sendMessage(plugin.getMessage("test.chunkgen.no-durations"));
+                } else {
+                    sender.sendMessage(plugin.getMessage(averageMspt < BUSY_MSPT ?
+                            "test.chunkgen.sweep.worker-bound" : "test.chunkgen.sweep.main-bound",
+                            this.levels[knee + 1], averageMspt));
+                }
+            }
+            this.save();
+        }
+        this.onFinish.run();
+    }
+
+    private void save() {
+        File file = new File(new File(plugin.getDataFolder(), "sweeps"),
+                "chunkgen-" + new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date()) + ".csv");
+        List<String> rows = new ArrayList<>(this.rows);
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                Files.write(file.toPath(), rows, StandardCharsets.UTF_8);
+                sender.sendMessage(plugin.getMessage("test.chunkgen.sweep.saved", file.getName()));
+            } catch (IOException e) {
+                sender.sendMessage(plugin.getMessage("test.chunkgen.sweep.error", e.getMessage()));
+            }
+        });
+    }
+
+}
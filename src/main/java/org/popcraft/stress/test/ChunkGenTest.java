@@ -1,20 +1,29 @@
 package org.popcraft.stress.test;
 
-import io.papermc.lib.PaperLib;
 import org.bukkit.Bukkit;
-import org.bukkit.Chunk;
 import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.popcraft.stress.Stress;
+import org.popcraft.stress.jfr.TestEvent;
+import org.popcraft.stress.tps.TickHistory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.Random;
-import java.util.concurrent.CompletableFuture;
+import java.util.stream.LongStream;
 
 public class ChunkGenTest extends Test {
 
+    static final int REGION_CHUNK_LENGTH = 32;
+    static final int REGION_CHUNK_COUNT = REGION_CHUNK_LENGTH * REGION_CHUNK_LENGTH;
+    private static final int INITIAL_ADAPTIVE_WINDOW = 4;
+    // Regions which have already been generated are skipped in a spiral, but not forever
+    static final int MAX_SKIPPED_REGIONS = 4096;
+
     // The last region that was successfully tested (useful for load test default)
     private Integer lastRegionX, lastRegionZ;
     private World lastWorld;
@@ -26,55 +35,254 @@ public class ChunkGenTest extends Test {
     @Override
     public void run(CommandSender sender, Map<String, String> args) {
         Random random = new Random();
-        int MAX_REGION = 58593, regionX, regionZ;
+        int MAX_REGION = RegionSpiral.MAX_REGION, regionX, regionZ;
         World world;
+        int regionCount, sweep, window, maxPerTick, targetMspt;
+        String saveBaseline, compareBaseline;
         try {
             regionX = TestArgument.validateInt(sender, args, "rx",
                     random.nextInt(MAX_REGION * 2) - MAX_REGION, -MAX_REGION, MAX_REGION);
             regionZ = TestArgument.validateInt(sender, args, "rz",
                     random.nextInt(MAX_REGION * 2) - MAX_REGION, -MAX_REGION, MAX_REGION);
             world = TestArgument.validateWorld(sender, args, "world", Bukkit.getWorlds().get(0));
+            regionCount = TestArgument.validateInt(sender, args, "regions", 1, 1, MAX_SKIPPED_REGIONS);
+            sweep = TestArgument.validateInt(sender, args, "sweep", 0, 0, REGION_CHUNK_COUNT);
+            // Without a limit on chunks in flight, 32 chunks are requested per tick for 32 ticks
+            String inFlight = args.get("inflight");
+            if (inFlight == null) {
+                window = REGION_CHUNK_COUNT;
+                maxPerTick = REGION_CHUNK_LENGTH;
+                targetMspt = 0;
+            } else if ("adaptive".equalsIgnoreCase(inFlight)) {
+                // Tick lengths never drop below 50 ms, so the window would only ever shrink if it adapted to them
+                if (!plugin.getTickProfiler().measuresTickDuration()) {
+                    sender.sendMessage(plugin.getMessage("test.chunkgen.adaptive-unsupported"));
+                    return;
+                }
+                window = INITIAL_ADAPTIVE_WINDOW;
+                maxPerTick = REGION_CHUNK_COUNT;
+                targetMspt = TestArgument.validateInt(sender, args, "mspt", 45, 1, null);
+            } else {
+                window = TestArgument.validateInt(sender, args, "inflight", REGION_CHUNK_LENGTH, 1, REGION_CHUNK_COUNT);
+                maxPerTick = REGION_CHUNK_COUNT;
+                targetMspt = 0;
+            }
+            saveBaseline = TestArgument.validateBaseline(sender, args, "baseline", false);
+            compareBaseline = TestArgument.validateBaseline(sender, args, "compare", true);
         } catch (IllegalArgumentException e) {
             return;
         }
-        int REGION_CHUNK_LENGTH = 32;
+        if (sweep > 0) {
+            this.runSweep(sender, world, regionX, regionZ, sweep, regionCount);
+            return;
+        }
+        if (regionCount > 1) {
+            this.runRegions(sender, world, regionX, regionZ, regionCount, window, maxPerTick, targetMspt,
+                    saveBaseline, compareBaseline);
+            return;
+        }
+        // Scan the region to make sure that all chunks are fresh
+        new RegionScanner(plugin, world).scan(regionX, regionZ, state -> {
+            if (state != RegionScanner.State.FRESH) {
+                sender.sendMessage(plugin.getMessage("test.chunkgen.already-generated"));
+                return;
+            }
+            this.runRegion(sender, world, regionX, regionZ, window, maxPerTick, targetMspt, saveBaseline,
+                    compareBaseline);
+        });
+    }
+
+    /**
+     * Generates a single fresh region.
+     */
+    private void runRegion(CommandSender sender, World world, int regionX, int regionZ, int window, int maxPerTick,
+                           int targetMspt, String saveBaseline, String compareBaseline) {
+        sender.sendMessage(plugin.getMessage("test.chunkgen.starting", regionX, regionZ, world.getName()));
+        TestEvent testEvent = TestEvent.begin(this.name,
+                String.format("world=%s rx=%d rz=%d", world.getName(), regionX, regionZ));
+        plugin.getTickProfiler().addInterval(this.name);
+        ChunkLoader chunkLoader = new ChunkLoader(plugin, world, regionChunks(regionX, regionZ), window, maxPerTick,
+                targetMspt);
+        chunkLoader.start(() -> {
+            TestEvent.end(testEvent);
+            sender.sendMessage(plugin.getTickProfiler().tpsReport(this.name));
+            sender.sendMessage(chunkLoader.report());
+            this.finishBaselines(sender, saveBaseline, compareBaseline);
+            plugin.getTickProfiler().removeInterval(this.name);
+            this.lastRegionX = regionX;
+            this.lastRegionZ = regionZ;
+            this.lastWorld = world;
+        });
+    }
+
+    /**
+     * Generates a spiral of fresh regions around a centre region, reporting progress as each region completes, and
+     * the sustained throughput and cost to the main thread over the whole run.
+     */
+    private void runRegions(CommandSender sender, World world, int centreX, int centreZ, int regionCount, int window,
+                            int maxPerTick, int targetMspt, String saveBaseline, String compareBaseline) {
+        sender.sendMessage(plugin.getMessage("test.chunkgen.starting-regions", regionCount, centreX, centreZ,
+                world.getName()));
+        // Region files are read on another thread, so every region is found before any chunks are requested
+        new RegionScanner(plugin, world).findFresh(new RegionSpiral(centreX, centreZ), regionCount, regions -> {
+            if (regions.isEmpty()) {
+                sender.sendMessage(plugin.getMessage("test.chunkgen.already-generated"));
+                return;
+            }
+            TestEvent testEvent = TestEvent.begin(this.name,
+                    String.format("world=%s rx=%d rz=%d regions=%d", world.getName(), centreX, centreZ, regionCount));
+            double tickDurationBefore = plugin.getTickProfiler().getInterval("short").getAverageTickDuration();
+            plugin.getTickProfiler().addInterval(this.name);
+            SpiralChunks spiralChunks = new SpiralChunks(sender, regions);
+            ChunkLoader chunkLoader = new ChunkLoader(plugin, world, spiralChunks, window, maxPerTick, targetMspt);
+            chunkLoader.setChunkListener(spiralChunks::onChunk);
+            chunkLoader.start(() -> {
+                TestEvent.end(testEvent);
+                double tickDurationDuring = plugin.getTickProfiler().getInterval(this.name).getAverageTickDuration();
+                sender.sendMessage(plugin.getTickProfiler().tpsReport(this.name));
+                sender.sendMessage(chunkLoader.report());
+                sender.sendMessage(plugin.getMessage("test.chunkgen.regions",
+                        spiralChunks.regionsCompleted,
+                        chunkLoader.getSustainedChunksPerSecond()));
+                // Tick lengths never drop below 50 ms, so they would hide what generating the regions cost
+                if (plugin.getTickProfiler().measuresTickDuration()) {
+                    sender.sendMessage(plugin.getMessage("test.chunkgen.impact",
+                            tickDurationBefore,
+                            tickDurationDuring,
+                            tickDurationDuring - tickDurationBefore));
+                } else {
+                    sender.sendMessage(plugin.getMessage("test.chunkgen.no-durations"));
+                }
+                this.finishBaselines(sender, saveBaseline, compareBaseline);
+                plugin.getTickProfiler().removeInterval(this.name);
+                long firstRegion = regions.get(0);
+                this.lastRegionX = (int) firstRegion;
+                this.lastRegionZ = (int) (firstRegion >> 32);
+                this.lastWorld = world;
+            });
+        });
+    }
+
+    /**
+     * Generates fresh regions at increasing numbers of chunks in flight, to find where generation stops scaling.
+     */
+    private void runSweep(CommandSender sender, World world, int centreX, int centreZ, int maxInFlight,
+                          int regionsPerLevel) {
+        sender.sendMessage(plugin.getMessage("test.chunkgen.sweep.starting", maxInFlight, regionsPerLevel, centreX,
+                centreZ, world.getName()));
+        TestEvent testEvent = TestEvent.begin(this.name, String.format("world=%s rx=%d rz=%d sweep=%d regions=%d",
+                world.getName(), centreX, centreZ, maxInFlight, regionsPerLevel));
+        plugin.getTickProfiler().addInterval(this.name);
+        ChunkGenSweep chunkGenSweep = new ChunkGenSweep(plugin, sender, world, centreX, centreZ, maxInFlight,
+                regionsPerLevel);
+        chunkGenSweep.start(() -> {
+            TestEvent.end(testEvent);
+            sender.sendMessage(plugin.getTickProfiler().tpsReport(this.name));
+            plugin.getTickProfiler().removeInterval(this.name);
+        });
+    }
+
+    /**
+     * Gets every chunk in a region, a column of chunks at a time.
+     *
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @return The chunk keys.
+     */
+    static PrimitiveIterator.OfLong regionChunks(int regionX, int regionZ) {
+        return regionChunkStream(regionX, regionZ).iterator();
+    }
+
+    static LongStream regionChunkStream(int regionX, int regionZ) {
         int startChunkX = regionX * REGION_CHUNK_LENGTH;
         int startChunkZ = regionZ * REGION_CHUNK_LENGTH;
-        // Scan the region to make sure that all chunks are fresh
-        for (int x = 0; x < REGION_CHUNK_LENGTH; ++x) {
-            for (int z = 0; z < REGION_CHUNK_LENGTH; ++z) {
-                if (PaperLib.isChunkGenerated(world, startChunkX + x, startChunkZ + z)) {
-                    sender.sendMessage(plugin.getMessage("test.chunkgen.already-generated"));
-                    return;
+        return LongStream.range(0, REGION_CHUNK_COUNT)
+                .map(i -> ChunkLoader.chunkKey(startChunkX + (int) (i / REGION_CHUNK_LENGTH),
+                        startChunkZ + (int) (i % REGION_CHUNK_LENGTH)));
+    }
+
+    /**
+     * The chunks of fresh regions, one region after another. Only regions with chunks still in flight are tracked, so
+     * memory does not grow with the number of regions.
+     */
+    private class SpiralChunks implements PrimitiveIterator.OfLong {
+
+        private final CommandSender sender;
+        private final List<Long> regionKeys;
+        private final Map<Long, RegionProgress> regions = new HashMap<>();
+        private PrimitiveIterator.OfLong regionChunks;
+        private int regionsStarted, regionsCompleted;
+
+        private SpiralChunks(CommandSender sender, List<Long> regionKeys) {
+            this.sender = sender;
+            this.regionKeys = regionKeys;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.regionChunks == null || !this.regionChunks.hasNext()) {
+                if (this.regionsStarted == this.regionKeys.size()) {
+                    return false;
                 }
+                long regionKey = this.regionKeys.get(this.regionsStarted++);
+                int regionX = (int) regionKey, regionZ = (int) (regionKey >> 32);
+                this.regions.put(regionKey, new RegionProgress(regionX, regionZ,
+                        plugin.getTickProfiler().getHistory().getTotalTickCount()));
+                this.regionChunks = regionChunks(regionX, regionZ);
             }
+            return true;
         }
-        sender.sendMessage(plugin.getMessage("test.chunkgen.starting", regionX, regionZ, world.getName()));
-        List<CompletableFuture<Chunk>> chunkFutures = new ArrayList<>();
-        plugin.getTickProfiler().addInterval(this.name);
-        for (int x = 0; x < REGION_CHUNK_LENGTH; ++x) {
-            for (int z = 0; z < REGION_CHUNK_LENGTH; ++z) {
-                int finalX = x;
-                int finalZ = z;
-                // Load up to 32 chunks per tick for 32 ticks
-                Bukkit.getScheduler().scheduleSyncDelayedTask(plugin, () -> {
-                    chunkFutures.add(PaperLib.getChunkAtAsync(world, startChunkX + finalX, startChunkZ + finalZ));
-                }, x);
+
+        @Override
+        public long nextLong() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
             }
+            return this.regionChunks.nextLong();
         }
-        int finalRegionX = regionX;
-        int finalRegionZ = regionZ;
-        Bukkit.getScheduler().scheduleSyncDelayedTask(plugin, () -> {
-            CompletableFuture.allOf(chunkFutures.toArray(new CompletableFuture[0])).thenRunAsync(() -> {
-                Bukkit.getScheduler().scheduleSyncDelayedTask(plugin, () -> {
-                    sender.sendMessage(plugin.getTickProfiler().tpsReport(this.name));
-                    plugin.getTickProfiler().removeInterval(this.name);
-                    this.lastRegionX = finalRegionX;
-                    this.lastRegionZ = finalRegionZ;
-                    this.lastWorld = world;
-                });
-            });
-        }, REGION_CHUNK_LENGTH);
+
+        private void onChunk(long chunkKey) {
+            int chunkX = (int) chunkKey, chunkZ = (int) (chunkKey >> 32);
+            long regionKey = ChunkLoader.chunkKey(Math.floorDiv(chunkX, REGION_CHUNK_LENGTH),
+                    Math.floorDiv(chunkZ, REGION_CHUNK_LENGTH));
+            RegionProgress progress = this.regions.get(regionKey);
+            if (progress == null || --progress.remaining > 0) {
+                return;
+            }
+            this.regions.remove(regionKey);
+            ++this.regionsCompleted;
+            double seconds = (System.nanoTime() - progress.startTime) / 1e9d;
+            TickHistory history = plugin.getTickProfiler().getHistory();
+            long endSequence = history.getTotalTickCount();
+            double averageTickDuration = endSequence > progress.startSequence &&
+                    history.contains(progress.startSequence) ?
+                    history.getSumOfTickDurations(progress.startSequence, endSequence) /
+                            (endSequence - progress.startSequence) : Double.NaN;
+            this.sender.sendMessage(plugin.getMessage("test.chunkgen.region",
+                    progress.regionX,
+                    progress.regionZ,
+                    this.regionsCompleted,
+                    this.regionKeys.size(),
+                    seconds,
+                    REGION_CHUNK_COUNT / seconds,
+                    averageTickDuration));
+        }
+
+    }
+
+    private static class RegionProgress {
+
+        private final int regionX, regionZ;
+        private final long startTime = System.nanoTime();
+        private final long startSequence;
+        private int remaining = REGION_CHUNK_COUNT;
+
+        private RegionProgress(int regionX, int regionZ, long startSequence) {
+            this.regionX = regionX;
+            this.regionZ = regionZ;
+            this.startSequence = startSequence;
+        }
+
     }
 
     @Override
@@ -83,6 +291,11 @@ public class ChunkGenTest extends Test {
         args.addAll(suggestArgument("world", Bukkit.getWorlds().stream().map(World::getName).toArray()));
         args.addAll(suggestArgument("rx", ""));
         args.addAll(suggestArgument("rz", ""));
+        args.addAll(suggestArgument("regions", "1", "4", "16", "64"));
+        args.addAll(suggestArgument("sweep", "64", "256"));
+        args.addAll(suggestArgument("inflight", "adaptive", "8", "32", "128"));
+        args.addAll(suggestArgument("mspt", "45"));
+        args.addAll(suggestBaselineArguments());
         return args;
     }
 
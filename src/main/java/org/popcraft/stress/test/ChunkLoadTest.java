@@ -1,20 +1,22 @@
 package org.popcraft.stress.test;
 
-import io.papermc.lib.PaperLib;
 import org.bukkit.Bukkit;
-import org.bukkit.Chunk;
 import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.popcraft.stress.Stress;
-import org.popcraft.stress.util.Stopwatch;
+import org.popcraft.stress.jfr.TestEvent;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
 
 public class ChunkLoadTest extends Test {
 
+    private static final int REGION_CHUNK_LENGTH = ChunkGenTest.REGION_CHUNK_LENGTH;
+    private static final int REGION_CHUNK_COUNT = ChunkGenTest.REGION_CHUNK_COUNT;
+    // Unloading is only requested, so give the server time to save and unload chunks before loading them again
+    private static final int UNLOAD_TICKS = 20;
+
     public ChunkLoadTest(Stress plugin) {
         super(plugin, "chunkload");
     }
@@ -23,6 +25,7 @@ public class ChunkLoadTest extends Test {
     public void run(CommandSender sender, Map<String, String> args) {
         int MAX_REGION = 58593, regionX, regionZ;
         World world;
+        String mode, saveBaseline, compareBaseline;
         try {
             ChunkGenTest chunkGenTest = (ChunkGenTest) plugin.getTests().get("chunkgen");
             regionX = TestArgument.validateInt(sender, args, "rx",
@@ -31,43 +34,104 @@ public class ChunkLoadTest extends Test {
                     chunkGenTest.getLastRegionZ() == null ? 1 : chunkGenTest.getLastRegionZ(), -MAX_REGION, MAX_REGION);
             world = TestArgument.validateWorld(sender, args, "world",
                     chunkGenTest.getLastWorld() == null ? Bukkit.getWorlds().get(0) : chunkGenTest.getLastWorld());
+            mode = TestArgument.validateString(sender, args, "mode", "cold").toLowerCase();
+            if (!mode.equals("cold") && !mode.equals("warm")) {
+                sender.sendMessage(plugin.getMessage("test.general.invalid-argument", "mode", mode));
+                return;
+            }
+            saveBaseline = TestArgument.validateBaseline(sender, args, "baseline", false);
+            compareBaseline = TestArgument.validateBaseline(sender, args, "compare", true);
         } catch (IllegalArgumentException e) {
             return;
         }
-        // Regions have a side length of 32 chunks
-        int REGION_CHUNK_LENGTH = 32;
+        // Scan the region to make sure that all chunks are generated
+        new RegionScanner(plugin, world).scan(regionX, regionZ, state -> {
+            if (state != RegionScanner.State.GENERATED) {
+                sender.sendMessage(plugin.getMessage("test.chunkload.not-generated"));
+                return;
+            }
+            this.start(sender, world, regionX, regionZ, mode, saveBaseline, compareBaseline);
+        });
+    }
+
+    /**
+     * Unloads the region first when loading it cold, or loads it and keeps it loaded when loading it warm.
+     */
+    private void start(CommandSender sender, World world, int regionX, int regionZ, String mode, String saveBaseline,
+                       String compareBaseline) {
+        sender.sendMessage(plugin.getMessage("test.chunkload.starting", regionX, regionZ, world.getName(), mode));
+        Runnable load = () -> this.load(sender, world, regionX, regionZ, mode, saveBaseline, compareBaseline);
+        if (mode.equals("warm")) {
+            // Load the region once and hold every chunk in memory with a ticket, so that none are unloaded in between
+            ChunkLoader warmUp = new ChunkLoader(plugin, world, ChunkGenTest.regionChunks(regionX, regionZ),
+                    REGION_CHUNK_COUNT, REGION_CHUNK_COUNT, 0);
+            warmUp.setGenerate(false);
+            warmUp.setChunkListener(chunkKey -> {
+                int chunkX = (int) chunkKey, chunkZ = (int) (chunkKey >> 32);
+                // Adding a ticket loads a chunk right away, so only add one to chunks which already loaded
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    world.addPluginChunkTicket(chunkX, chunkZ, plugin);
+                }
+            });
+            warmUp.start(load);
+            return;
+        }
         int startChunkX = regionX * REGION_CHUNK_LENGTH;
         int startChunkZ = regionZ * REGION_CHUNK_LENGTH;
-        // Scan the region to make sure that all chunks are generated
+        // Anything still loaded after unloading, such as chunks near players or kept loaded by plugins, loads warm
+        int loaded = 0;
         for (int x = 0; x < REGION_CHUNK_LENGTH; ++x) {
             for (int z = 0; z < REGION_CHUNK_LENGTH; ++z) {
-                if (!PaperLib.isChunkGenerated(world, startChunkX + x, startChunkZ + z)) {
-                    sender.sendMessage(plugin.getMessage("test.chunkload.not-generated"));
-                    return;
+                if (world.isChunkLoaded(startChunkX + x, startChunkZ + z)) {
+                    world.unloadChunk(startChunkX + x, startChunkZ + z, true);
+                    ++loaded;
                 }
             }
         }
-        sender.sendMessage(plugin.getMessage("test.chunkload.starting", regionX, regionZ, world.getName()));
-        List<CompletableFuture<Chunk>> chunkFutures = new ArrayList<>();
-        Stopwatch stopwatch = new Stopwatch();
-        stopwatch.start();
-        for (int x = 0; x < REGION_CHUNK_LENGTH; ++x) {
-            for (int z = 0; z < REGION_CHUNK_LENGTH; ++z) {
-                int finalX = x;
-                int finalZ = z;
-                World finalWorld = world;
-                Bukkit.getScheduler().scheduleSyncDelayedTask(plugin, () -> {
-                    chunkFutures.add(PaperLib.getChunkAtAsync(finalWorld, startChunkX + finalX, startChunkZ + finalZ));
-                });
+        int unloaded = loaded;
+        Bukkit.getScheduler().runTaskLater(plugin, () -> {
+            int stillLoaded = 0;
+            for (int x = 0; x < REGION_CHUNK_LENGTH; ++x) {
+                for (int z = 0; z < REGION_CHUNK_LENGTH; ++z) {
+                    if (world.isChunkLoaded(startChunkX + x, startChunkZ + z)) {
+                        ++stillLoaded;
+                    }
+                }
+            }
+            sender.sendMessage(plugin.getMessage("test.chunkload.unloaded", unloaded - stillLoaded, unloaded,
+                    stillLoaded));
+            load.run();
+        }, UNLOAD_TICKS);
+    }
+
+    /**
+     * Loads every chunk of the region at once, in its own tick interval, then reports what loading cost the main
+     * thread and how long each chunk took.
+     */
+    private void load(CommandSender sender, World world, int regionX, int regionZ, String mode, String saveBaseline,
+                      String compareBaseline) {
+        TestEvent testEvent = TestEvent.begin(this.name,
+                String.format("world=%s rx=%d rz=%d mode=%s", world.getName(), regionX, regionZ, mode));
+        plugin.getTickProfiler().addInterval(this.name);
+        ChunkLoader chunkLoader = new ChunkLoader(plugin, world, ChunkGenTest.regionChunks(regionX, regionZ),
+                REGION_CHUNK_COUNT, REGION_CHUNK_COUNT, 0);
+        chunkLoader.setGenerate(false);
+        chunkLoader.start(() -> {
+            TestEvent.end(testEvent);
+            sender.sendMessage(plugin.getTickProfiler().tpsReport(this.name));
+            sender.sendMessage(chunkLoader.report());
+            // Chunks which were only partly generated do not load, so the results do not cover the whole region
+            if (chunkLoader.getFailed() > 0) {
+                sender.sendMessage(plugin.getMessage("test.chunkload.failed", chunkLoader.getFailed(),
+                        REGION_CHUNK_COUNT));
+            } else {
+                this.finishBaselines(sender, saveBaseline, compareBaseline);
+            }
+            plugin.getTickProfiler().removeInterval(this.name);
+            if (mode.equals("warm")) {
+                ChunkGenTest.regionChunks(regionX, regionZ).forEachRemaining((long chunkKey) ->
+                        world.removePluginChunkTicket((int) chunkKey, (int) (chunkKey >> 32), plugin));
             }
-        }
-        Bukkit.getScheduler().scheduleSyncDelayedTask(plugin, () -> {
-            CompletableFuture.allOf(chunkFutures.toArray(new CompletableFuture[0])).thenRunAsync(() -> {
-                Bukkit.getScheduler().scheduleSyncDelayedTask(plugin, () -> {
-                    stopwatch.stop();
-                    sender.sendMessage(plugin.getMessage("test.chunkload.time", stopwatch.getTime()));
-                });
-            });
         });
     }
 
@@ -77,6 +141,8 @@ public class ChunkLoadTest extends Test {
         args.addAll(suggestArgument("world", Bukkit.getWorlds().stream().map(World::getName).toArray()));
         args.addAll(suggestArgument("rx", ""));
         args.addAll(suggestArgument("rz", ""));
+        args.addAll(suggestArgument("mode", "cold", "warm"));
+        args.addAll(suggestBaselineArguments());
         return args;
     }
 
@@ -0,0 +1,245 @@
+package org.popcraft.stress.test;
+
+import io.papermc.lib.PaperLib;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
+import org.popcraft.stress.Stress;
+import org.popcraft.stress.tps.Tick;
+import org.popcraft.stress.tps.TickHistogram;
+
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+
+public class ChunkLoader {
+
+    // Adaptive windows never grow past this, which is far more than any server has worker threads for
+    private static final int MAX_WINDOW = 4096;
+
+    private final Stress plugin;
+    private final World world;
+    private final PrimitiveIterator.OfLong chunks;
+    private final int maxPerTick;
+    private final double targetMspt;
+    private boolean generate = true;
+    private LongConsumer chunkListener;
+    private Runnable onFinish;
+    private BukkitTask task;
+    // Everything below is only used on the main thread
+    private int window;
+    private boolean slowStart = true;
+    private int windowDecreases, maxWindow;
+    private int inFlight, maxInFlight;
+    private long sumOfInFlight, ticks;
+    private int completed, failed;
+    private long startTime, firstChunkTime, lastChunkTime;
+    private final TickHistogram latencies = new TickHistogram();
+    private double maxLatency;
+
+    /**
+     * Create a loader which requests chunks asynchronously while limiting how many are in flight at once, and measures
+     * how long each one takes. The limit is either fixed, or adapted every tick with additive increase and
+     * multiplicative decrease: it doubles until the tick duration first goes over the target, then grows by one
+     * chunk per tick while the limit is reached, and halves whenever a tick goes over the target. It is halved at
+     * most once until the chunks in flight are back within it, since requests which were already made still
+     * complete after it is lowered.
+     *
+     * @param plugin     The plugin.
+     * @param world      The world to load chunks in.
+     * @param chunks     The chunks to load, as chunk keys with x in the low and z in the high 32 bits.
+     * @param window     The most chunks in flight at once, or the initial limit if it is adaptive.
+     * @param maxPerTick The most chunks to request per tick.
+     * @param targetMspt The tick duration in milliseconds to adapt the limit to, or 0 for a fixed limit.
+     */
+    public ChunkLoader(Stress plugin, World world, PrimitiveIterator.OfLong chunks, int window, int maxPerTick,
+                       double targetMspt) {
+        this.plugin = plugin;
+        this.world = world;
+        this.chunks = chunks;
+        this.window = Math.max(1, window);
+        this.maxPerTick = maxPerTick;
+        this.targetMspt = targetMspt;
+        this.maxWindow = this.window;
+    }
+
+    /**
+     * Gets a chunk key, which is how chunks are given to a loader.
+     *
+     * @param chunkX The chunk x coordinate.
+     * @param chunkZ The chunk z coordinate.
+     * @return The chunk key.
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return (chunkX & 0xFFFFFFFFL) | (chunkZ & 0xFFFFFFFFL) << 32;
+    }
+
+    /**
+     * Sets whether chunks which have not been generated yet are generated, or left alone and counted as failed.
+     *
+     * @param generate True to generate chunks.
+     */
+    public void setGenerate(boolean generate) {
+        this.generate = generate;
+    }
+
+    /**
+     * Sets a listener which is called on the main thread with the key of every chunk once it completes, whether it
+     * loaded or not. Nothing else about the chunk is kept once it completes.
+     *
+     * @param chunkListener The listener.
+     */
+    public void setChunkListener(LongConsumer chunkListener) {
+        this.chunkListener = chunkListener;
+    }
+
+    /**
+     * Starts requesting chunks on the next tick. This must be called on the main thread.
+     *
+     * @param onFinish Called on the main thread once every chunk has completed.
+     */
+    public void start(Runnable onFinish) {
+        this.onFinish = onFinish;
+        this.startTime = System.nanoTime();
+        this.task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 0, 1);
+    }
+
+    private void tick() {
+        if (this.ticks > 0 && this.targetMspt > 0) {
+            this.adaptWindow();
+        }
+        ++this.ticks;
+        int requests = Math.min(this.maxPerTick, this.window - this.inFlight);
+        while (requests-- > 0 && this.chunks.hasNext()) {
+            this.request(this.chunks.nextLong());
+        }
+        this.sumOfInFlight += this.inFlight;
+        if (!this.chunks.hasNext() && this.inFlight == 0) {
+            this.task.cancel();
+            this.onFinish.run();
+        }
+    }
+
+    private void adaptWindow() {
+        Tick lastTick = plugin.getTickProfiler().getLastTick();
+        if (lastTick == null) {
+            return;
+        }
+        if (lastTick.getTickDuration() > this.targetMspt) {
+            if (this.inFlight <= this.window) {
+                this.window = Math.max(1, this.window / 2);
+                this.slowStart = false;
+                ++this.windowDecreases;
+            }
+        } else if (this.inFlight >= this.window) {
+            this.window = Math.min(MAX_WINDOW, this.slowStart ? this.window * 2 : this.window + 1);
+            this.maxWindow = Math.max(this.maxWindow, this.window);
+        }
+    }
+
+    private void request(long chunkKey) {
+        int chunkX = (int) chunkKey, chunkZ = (int) (chunkKey >> 32);
+        long requestTime = System.nanoTime();
+        ++this.inFlight;
+        this.maxInFlight = Math.max(this.maxInFlight, this.inFlight);
+        PaperLib.getChunkAtAsync(this.world, chunkX, chunkZ, this.generate).whenComplete((chunk, throwable) -> {
+            long completeTime = System.nanoTime();
+            boolean success = throwable == null && chunk != null;
+            // Chunks are normally completed on the main thread, but that is not guaranteed everywhere
+            if (Bukkit.isPrimaryThread()) {
+                this.complete(chunkKey, requestTime, completeTime, success);
+            } else {
+                Bukkit.getScheduler().runTask(plugin, () -> this.complete(chunkKey, requestTime, completeTime,
+                        success));
+            }
+        });
+    }
+
+    private void complete(long chunkKey, long requestTime, long completeTime, boolean success) {
+        --this.inFlight;
+        if (success) {
+            if (this.completed++ == 0) {
+                this.firstChunkTime = completeTime;
+            }
+            this.lastChunkTime = Math.max(this.lastChunkTime, completeTime);
+            double latency = (completeTime - requestTime) / 1e6d;
+            this.latencies.add(latency);
+            this.maxLatency = Math.max(this.maxLatency, latency);
+        } else {
+            ++this.failed;
+        }
+        if (this.chunkListener != null) {
+            this.chunkListener.accept(chunkKey);
+        }
+    }
+
+    public int getCompleted() {
+        return this.completed;
+    }
+
+    /**
+     * Gets the number of chunks which did not load, which are the chunks that were not generated when chunks are not
+     * being generated.
+     *
+     * @return The number of failed chunks.
+     */
+    public int getFailed() {
+        return this.failed;
+    }
+
+    /**
+     * Gets the number of chunks loaded per second from the start until the last chunk.
+     *
+     * @return The number of chunks per second, or zero if no chunks were loaded.
+     */
+    public double getChunksPerSecond() {
+        return this.completed == 0 ? 0 : this.completed / ((this.lastChunkTime - this.startTime) / 1e9d);
+    }
+
+    /**
+     * Gets the time taken to load a chunk at a percentile, from being requested until it completed.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The chunk latency in milliseconds.
+     */
+    public double getLatencyPercentile(double percentile) {
+        return this.latencies.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Gets the number of chunks loaded per second between the first and the last chunk, which leaves out the time
+     * taken to get going.
+     *
+     * @return The number of chunks per second, or zero if fewer than two chunks were loaded.
+     */
+    public double getSustainedChunksPerSecond() {
+        return this.completed < 2 ? 0 : (this.completed - 1) / ((this.lastChunkTime - this.firstChunkTime) / 1e9d);
+    }
+
+    /**
+     * Generates a report of how quickly chunks were loaded, how long each took and how many were in flight.
+     *
+     * @return The report.
+     */
+    public String report() {
+        double lastChunkMillis = this.completed == 0 ? 0 : (this.lastChunkTime - this.startTime) / 1e6d;
+        double firstChunkMillis = this.completed == 0 ? 0 : (this.firstChunkTime - this.startTime) / 1e6d;
+        String report = plugin.getMessage("test.chunks.throughput",
+                this.completed,
+                this.failed,
+                lastChunkMillis / 1e3d,
+                lastChunkMillis == 0 ? 0 : this.completed / (lastChunkMillis / 1e3d),
+                firstChunkMillis,
+                lastChunkMillis) + "\n" + plugin.getMessage("test.chunks.latency",
+                this.latencies.getValueAtPercentile(50),
+                this.latencies.getValueAtPercentile(90),
+                this.latencies.getValueAtPercentile(99),
+                this.maxLatency) + "\n";
+        double averageInFlight = this.ticks == 0 ? 0 : (double) this.sumOfInFlight / this.ticks;
+        if (this.targetMspt > 0) {
+            return report + plugin.getMessage("test.chunks.adaptive", averageInFlight, this.maxInFlight,
+                    this.targetMspt, this.maxWindow, this.window, this.windowDecreases);
+        }
+        return report + plugin.getMessage("test.chunks.in-flight", averageInFlight, this.maxInFlight);
+    }
+
+}
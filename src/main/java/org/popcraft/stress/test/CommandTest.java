@@ -5,6 +5,7 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.HumanEntity;
 import org.bukkit.entity.Player;
 import org.popcraft.stress.Stress;
+import org.popcraft.stress.jfr.TestEvent;
 import org.popcraft.stress.tps.TpsUtil;
 import org.popcraft.stress.util.Stopwatch;
 
@@ -31,6 +32,8 @@ public class CommandTest extends Test {
         String testCommand = command.replace(separator, " ");
         Stopwatch stopwatch = new Stopwatch();
         sender.sendMessage(plugin.getMessage("test.command.starting"));
+        TestEvent testEvent = TestEvent.begin(this.name,
+                String.format("command=%s source=%s", testCommand, source));
         if ("sender".equalsIgnoreCase(source)) {
             stopwatch.start();
             Bukkit.dispatchCommand(sender, testCommand);
@@ -49,6 +52,7 @@ public class CommandTest extends Test {
             Bukkit.dispatchCommand(player, testCommand);
             stopwatch.stop();
         }
+        TestEvent.end(testEvent);
         sender.sendMessage(plugin.getMessage("test.command.time", TpsUtil.formatTick(stopwatch.getTime())));
     }
 
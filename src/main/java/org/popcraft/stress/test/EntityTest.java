@@ -16,6 +16,7 @@ import org.bukkit.event.entity.EntityExplodeEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.projectiles.ProjectileSource;
 import org.popcraft.stress.Stress;
+import org.popcraft.stress.jfr.TestEvent;
 import org.popcraft.stress.util.BukkitVersion;
 
 import java.util.ArrayList;
@@ -50,6 +51,7 @@ public class EntityTest extends Test implements Listener {
         Player player;
         EntityType entityType;
         int amount, duration, range;
+        String saveBaseline, compareBaseline;
         int maxRange = 16 * (Bukkit.getServer().getViewDistance() - 1);
         try {
             player = TestArgument.validatePlayer(sender);
@@ -57,11 +59,15 @@ public class EntityTest extends Test implements Listener {
             amount = TestArgument.validateInt(sender, args, "amount", 100, 1, null);
             duration = TestArgument.validateInt(sender, args, "duration", 10, 1, null);
             range = TestArgument.validateInt(sender, args, "range", 0, 0, maxRange);
+            saveBaseline = TestArgument.validateBaseline(sender, args, "baseline", false);
+            compareBaseline = TestArgument.validateBaseline(sender, args, "compare", true);
         } catch (IllegalArgumentException e) {
             return;
         }
         Location playerLocation = player.getLocation();
         currentPlayer = player;
+        TestEvent testEvent = TestEvent.begin(this.name, String.format("entity=%s amount=%d duration=%d range=%d",
+                entityType.name().toLowerCase(), amount, duration, range));
         sender.sendMessage(plugin.getMessage("test.entity",
                 amount, entityType.toString().toLowerCase().replace('_', ' '), range, duration));
         for (int i = 0; i < amount; ++i) {
@@ -76,7 +82,9 @@ public class EntityTest extends Test implements Listener {
                     e.printStackTrace();
                 } finally {
                     Bukkit.getScheduler().scheduleSyncDelayedTask(plugin, () -> {
+                        TestEvent.end(testEvent);
                         sender.sendMessage(plugin.getTickProfiler().tpsReport(this.name));
+                        this.finishBaselines(sender, saveBaseline, compareBaseline);
                         plugin.getTickProfiler().removeInterval(this.name);
                         entities.forEach(Entity::remove);
                         entities.clear();
@@ -159,6 +167,7 @@ public class EntityTest extends Test implements Listener {
         args.addAll(suggestArgument("amount", "100"));
         args.addAll(suggestArgument("duration", "10"));
         args.addAll(suggestArgument("range", "0"));
+        args.addAll(suggestBaselineArguments());
         return args;
     }
 
@@ -0,0 +1,82 @@
+package org.popcraft.stress.test;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.popcraft.stress.Stress;
+import org.popcraft.stress.tps.TickLog;
+import org.popcraft.stress.tps.TickStatistics;
+import org.popcraft.stress.tps.TpsUtil;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class HistoryTest extends Test {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    public HistoryTest(Stress plugin) {
+        super(plugin, "history");
+    }
+
+    @Override
+    public void run(CommandSender sender, Map<String, String> args) {
+        TickLog tickLog = plugin.getTickProfiler().getTickLog();
+        if (tickLog == null) {
+            sender.sendMessage(plugin.getMessage("test.history.disabled"));
+            return;
+        }
+        long from, to;
+        try {
+            from = TestArgument.validateTime(sender, args, "from", "1h");
+            to = TestArgument.validateTime(sender, args, "to", "now");
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        String fromTime = TIME_FORMATTER.format(Instant.ofEpochMilli(from));
+        String toTime = TIME_FORMATTER.format(Instant.ofEpochMilli(to));
+        sender.sendMessage(plugin.getMessage("test.history.starting", fromTime, toTime));
+        // The tick log is streamed from disk, which should never hold up the main thread
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            TickStatistics statistics = new TickStatistics();
+            try {
+                tickLog.read(from, to, (epochMillis, tickNumber, tickLength, tickDuration, tickSleepDuration) ->
+                        statistics.add(tickLength, tickDuration));
+            } catch (IOException e) {
+                sender.sendMessage(plugin.getMessage("test.history.error"));
+                return;
+            }
+            if (statistics.getTickCount() == 0) {
+                sender.sendMessage(plugin.getMessage("test.history.empty", fromTime, toTime));
+                return;
+            }
+            sender.sendMessage(plugin.getMessage("test.history.report",
+                    fromTime,
+                    toTime,
+                    statistics.getTickCount(),
+                    TpsUtil.formatTps(statistics.getTps()),
+                    TpsUtil.formatTick(statistics.getMinTickDuration()),
+                    TpsUtil.formatTick(statistics.getAverageTickDuration()),
+                    TpsUtil.formatTick(statistics.getMaxTickDuration()),
+                    TpsUtil.formatTick(statistics.getStandardDeviationTickDuration()),
+                    TpsUtil.formatTick(statistics.getTickDurationPercentile(50)),
+                    TpsUtil.formatTick(statistics.getTickDurationPercentile(90)),
+                    TpsUtil.formatTick(statistics.getTickDurationPercentile(99)),
+                    TpsUtil.formatTick(statistics.getTickDurationPercentile(99.9))));
+        });
+    }
+
+    @Override
+    public List<String> suggestedArguments() {
+        List<String> args = new ArrayList<>();
+        args.addAll(suggestArgument("from", "10m", "1h", "6h", "1d"));
+        args.addAll(suggestArgument("to", "now"));
+        return args;
+    }
+
+}
@@ -0,0 +1,67 @@
+package org.popcraft.stress.test;
+
+import org.bukkit.command.CommandSender;
+import org.popcraft.stress.Stress;
+import org.popcraft.stress.tps.PluginAttribution;
+import org.popcraft.stress.tps.TickInterval;
+import org.popcraft.stress.tps.TpsUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class PluginsTest extends Test {
+
+    private static final int MAX_PLUGINS = 10;
+
+    public PluginsTest(Stress plugin) {
+        super(plugin, "plugins");
+    }
+
+    @Override
+    public void run(CommandSender sender, Map<String, String> args) {
+        PluginAttribution attribution = plugin.getPluginAttribution();
+        if (attribution == null) {
+            sender.sendMessage(plugin.getMessage("test.plugins.disabled"));
+            return;
+        }
+        String interval = args.getOrDefault("interval", "short");
+        TickInterval tickInterval = plugin.getTickProfiler().getInterval(interval);
+        if (tickInterval == null) {
+            sender.sendMessage(plugin.getMessage("test.general.invalid-argument", "interval", interval));
+            return;
+        }
+        // Pick up listeners registered since the last time
+        attribution.wrapListeners();
+        PluginAttribution.Report report = attribution.report(tickInterval.getMaxTickCount());
+        // The average tick duration is unknown once the start of the report has left the tick history
+        if (report == null || Double.isNaN(report.avgTickDurationMillis)) {
+            sender.sendMessage(plugin.getMessage("test.plugins.too-few"));
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(plugin.getMessage("test.plugins.header", report.durationMillis / 1e3d, report.tickCount,
+                TpsUtil.formatTick(report.avgTickDurationMillis)));
+        for (int i = 0; i < Math.min(MAX_PLUGINS, report.contributions.size()); ++i) {
+            PluginAttribution.Contribution contribution = report.contributions.get(i);
+            lines.add(plugin.getMessage("test.plugins.plugin",
+                    contribution.plugin,
+                    contribution.mainMillisPerTick,
+                    contribution.mainMillisPerTick / report.avgTickDurationMillis * 100,
+                    contribution.asyncMillisPerSecond));
+        }
+        double unattributed = Math.max(0, report.avgTickDurationMillis - report.attributedMillisPerTick);
+        lines.add(plugin.getMessage("test.plugins.unattributed", unattributed,
+                unattributed / report.avgTickDurationMillis * 100));
+        sender.sendMessage(String.join("\n", lines));
+    }
+
+    @Override
+    public List<String> suggestedArguments() {
+        List<String> args = new ArrayList<>();
+        args.addAll(suggestArgument("interval",
+                "shortest", "short", "normal", "long", "longest"));
+        return args;
+    }
+
+}
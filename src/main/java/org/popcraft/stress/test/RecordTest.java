@@ -0,0 +1,103 @@
+package org.popcraft.stress.test;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.popcraft.stress.Stress;
+import org.popcraft.stress.tps.TickRecordingWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public class RecordTest extends Test {
+
+    private TickRecordingWriter recording;
+
+    public RecordTest(Stress plugin) {
+        super(plugin, "record");
+    }
+
+    @Override
+    public void run(CommandSender sender, Map<String, String> args) {
+        if (args.containsKey("stop")) {
+            if (this.recording == null) {
+                sender.sendMessage(plugin.getMessage("test.record.not-recording"));
+                return;
+            }
+            TickRecordingWriter stoppedRecording = this.detach();
+            // Waiting for the rest of the recording to be written should never hold up the main thread
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                try {
+                    stoppedRecording.close();
+                    sender.sendMessage(plugin.getMessage("test.record.stopped", stoppedRecording.getTickCount(),
+                            stoppedRecording.getFile().getName(), stoppedRecording.getFile().length() / 1024d));
+                } catch (IOException e) {
+                    sender.sendMessage(plugin.getMessage("test.record.error", e.getMessage()));
+                }
+            });
+            return;
+        }
+        if (this.recording != null) {
+            sender.sendMessage(plugin.getMessage("test.record.already-recording", this.recording.getFile().getName()));
+            return;
+        }
+        String name;
+        try {
+            name = TestArgument.validateString(sender, args, "name",
+                    new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date()));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        if (!name.matches("[A-Za-z0-9_.-]+")) {
+            sender.sendMessage(plugin.getMessage("test.general.invalid-argument", "name", name));
+            return;
+        }
+        File file = new File(new File(plugin.getDataFolder(), "recordings"), name + ".ticks");
+        try {
+            this.recording = new TickRecordingWriter(file, plugin.getLogger());
+        } catch (IOException e) {
+            sender.sendMessage(plugin.getMessage("test.record.error", e.getMessage()));
+            return;
+        }
+        plugin.getTickProfiler().addTickListener(this.recording);
+        sender.sendMessage(plugin.getMessage("test.record.started", file.getName()));
+    }
+
+    /**
+     * Stops the current recording, if any, and waits for the rest of it to be written to disk, for a few seconds at
+     * most. This is only meant for when the plugin is disabled.
+     *
+     * @throws IOException If the recording could not be written.
+     */
+    public void stop() throws IOException {
+        if (this.recording != null) {
+            this.detach().close();
+        }
+    }
+
+    /**
+     * Stops the current recording from receiving ticks, and hands the rest of it to the writer thread.
+     *
+     * @return The stopped recording.
+     */
+    private TickRecordingWriter detach() {
+        plugin.getTickProfiler().removeTickListener(this.recording);
+        TickRecordingWriter stoppedRecording = this.recording;
+        this.recording = null;
+        stoppedRecording.finish();
+        return stoppedRecording;
+    }
+
+    @Override
+    public List<String> suggestedArguments() {
+        List<String> args = new ArrayList<>();
+        args.addAll(suggestArgument("name", ""));
+        args.add("stop");
+        return args;
+    }
+
+}
@@ -0,0 +1,248 @@
+package org.popcraft.stress.test;
+
+import io.papermc.lib.PaperLib;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.popcraft.stress.Stress;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tells how much of a region has been generated from which of its chunks have been saved. A saved chunk is not always
+ * fully generated, since the neighbours of generated chunks are also saved partway through generating, unlike with
+ * the server's own check, which only counts fully generated chunks. A region counts as fresh only if none of its
+ * chunks were saved, and as generated if all of them were, even if some of them were only partly generated.
+ */
+public class RegionScanner {
+
+    private static final int REGION_CHUNK_LENGTH = ChunkGenTest.REGION_CHUNK_LENGTH;
+    private static final int REGION_CHUNK_COUNT = ChunkGenTest.REGION_CHUNK_COUNT;
+    // Region files start with a table of 4 byte chunk locations, followed by a table of timestamps
+    private static final int LOCATION_TABLE_BYTES = REGION_CHUNK_COUNT * 4;
+    private static final int HEADER_BYTES = LOCATION_TABLE_BYTES * 2;
+    // Chunk data is stored in 4096 byte sectors, and the two header tables take up the first two
+    private static final int HEADER_SECTORS = 2;
+
+    public enum State {
+        FRESH,
+        PARTIAL,
+        GENERATED
+    }
+
+    private final Stress plugin;
+    private final World world;
+    private final Path regionFolder;
+    private Boolean layoutKnown;
+    private int regionsSkipped;
+
+    /**
+     * Create a scanner which tells how much of a region has been generated by reading the location table in the
+     * header of its region file on another thread, instead of asking the server about every chunk on the main thread.
+     * Chunks which are loaded but have not been saved yet are not in the region file, so they are still checked on the
+     * main thread, which is cheap since it never touches the disk. Chunks which were unloaded but are still waiting to
+     * be saved are missed. When the world is not stored in region files where they are expected, every chunk is
+     * checked with the server instead, as before.
+     *
+     * @param plugin The plugin.
+     * @param world  The world to scan regions of.
+     */
+    public RegionScanner(Stress plugin, World world) {
+        this.plugin = plugin;
+        this.world = world;
+        this.regionFolder = regionFolder(world);
+    }
+
+    /**
+     * Finds where a world keeps its region files, which depends on the dimension.
+     *
+     * @param world The world.
+     * @return The region folder, or null if the dimension has no known layout.
+     */
+    private static Path regionFolder(World world) {
+        File worldFolder = world.getWorldFolder();
+        switch (world.getEnvironment()) {
+            case NORMAL:
+                return new File(worldFolder, "region").toPath();
+            case NETHER:
+                return new File(worldFolder, "DIM-1" + File.separator + "region").toPath();
+            case THE_END:
+                return new File(worldFolder, "DIM1" + File.separator + "region").toPath();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Scans a region, reading its region file asynchronously.
+     *
+     * @param regionX  The region x coordinate.
+     * @param regionZ  The region z coordinate.
+     * @param callback Called on the main thread with how much of the region has been generated.
+     */
+    public void scan(int regionX, int regionZ, Consumer<State> callback) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            BitSet saved = this.readSavedChunks(regionX, regionZ);
+            Bukkit.getScheduler().runTask(plugin, () -> callback.accept(this.getState(regionX, regionZ, saved)));
+        });
+    }
+
+    /**
+     * Finds fresh regions in a spiral, reading region files asynchronously. Regions which are not fresh are skipped,
+     * up to a limit over the lifetime of the scanner.
+     *
+     * @param spiral   The spiral to take regions from, which is moved past every region that was looked at.
+     * @param count    The number of fresh regions to find.
+     * @param callback Called on the main thread with the region keys of the fresh regions in spiral order, which are
+     *                 fewer than asked for if the spiral ended or too many regions were skipped.
+     */
+    public void findFresh(RegionSpiral spiral, int count, Consumer<List<Long>> callback) {
+        this.findFresh(spiral, count, new ArrayList<>(), callback);
+    }
+
+    private void findFresh(RegionSpiral spiral, int count, List<Long> regions, Consumer<List<Long>> callback) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            // Regions with saved chunks are skipped here, the rest still need their loaded chunks checked
+            List<Long> candidates = new ArrayList<>();
+            List<BitSet> candidatesSaved = new ArrayList<>();
+            boolean exhausted = false;
+            while (candidates.size() < count - regions.size()) {
+                if (this.regionsSkipped == ChunkGenTest.MAX_SKIPPED_REGIONS || !spiral.next()) {
+                    exhausted = true;
+                    break;
+                }
+                int regionX = spiral.getRegionX(), regionZ = spiral.getRegionZ();
+                BitSet saved = this.readSavedChunks(regionX, regionZ);
+                if (saved != null && !saved.isEmpty()) {
+                    ++this.regionsSkipped;
+                    continue;
+                }
+                candidates.add(ChunkLoader.chunkKey(regionX, regionZ));
+                candidatesSaved.add(saved);
+            }
+            boolean finished = exhausted;
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                for (int i = 0; i < candidates.size(); ++i) {
+                    long regionKey = candidates.get(i);
+                    int regionX = (int) regionKey, regionZ = (int) (regionKey >> 32);
+                    if (this.getState(regionX, regionZ, candidatesSaved.get(i)) == State.FRESH) {
+                        regions.add(regionKey);
+                    } else {
+                        ++this.regionsSkipped;
+                    }
+                }
+                if (finished || regions.size() == count) {
+                    callback.accept(regions);
+                } else {
+                    this.findFresh(spiral, count, regions, callback);
+                }
+            });
+        });
+    }
+
+    /**
+     * Works out how much of a region has been generated from its saved chunks and the chunks loaded right now. This
+     * must be called on the main thread.
+     *
+     * @param saved The saved chunks, or null to check every chunk with the server.
+     */
+    private State getState(int regionX, int regionZ, BitSet saved) {
+        int startChunkX = regionX * REGION_CHUNK_LENGTH;
+        int startChunkZ = regionZ * REGION_CHUNK_LENGTH;
+        int generated = 0;
+        for (int z = 0; z < REGION_CHUNK_LENGTH; ++z) {
+            for (int x = 0; x < REGION_CHUNK_LENGTH; ++x) {
+                int chunkX = startChunkX + x, chunkZ = startChunkZ + z;
+                if (saved == null ? PaperLib.isChunkGenerated(this.world, chunkX, chunkZ) :
+                        saved.get(x + z * REGION_CHUNK_LENGTH) || this.world.isChunkLoaded(chunkX, chunkZ)) {
+                    ++generated;
+                }
+            }
+        }
+        if (generated == 0) {
+            return State.FRESH;
+        }
+        return generated == REGION_CHUNK_COUNT ? State.GENERATED : State.PARTIAL;
+    }
+
+    /**
+     * Reads which chunks of a region have been saved from the location table of its region file, where chunks which
+     * have never been saved have no location. A region without a region file has no saved chunks.
+     *
+     * @return The saved chunks, indexed by x + z * 32 within the region, or null if the region file can not be read.
+     */
+    private BitSet readSavedChunks(int regionX, int regionZ) {
+        if (!this.isLayoutKnown()) {
+            return null;
+        }
+        Path file = this.regionFolder.resolve("r." + regionX + "." + regionZ + ".mca");
+        if (!Files.exists(file)) {
+            return new BitSet(REGION_CHUNK_COUNT);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // The server creates an empty file before it writes the header
+            if (size == 0) {
+                return new BitSet(REGION_CHUNK_COUNT);
+            } else if (size < HEADER_BYTES) {
+                return null;
+            }
+            ByteBuffer locations = ByteBuffer.allocate(LOCATION_TABLE_BYTES);
+            while (locations.hasRemaining()) {
+                if (channel.read(locations, locations.position()) < 0) {
+                    return null;
+                }
+            }
+            BitSet saved = new BitSet(REGION_CHUNK_COUNT);
+            for (int i = 0; i < REGION_CHUNK_COUNT; ++i) {
+                // Each location is a 3 byte sector offset followed by a 1 byte sector count
+                int location = locations.getInt(i * 4);
+                if (location == 0) {
+                    continue;
+                } else if (location >>> 8 < HEADER_SECTORS) {
+                    return null;
+                }
+                saved.set(i);
+            }
+            return saved;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks once whether the world keeps its chunks in region files where they are expected, which it does not if
+     * its region folder is missing, or holds files but none of them are region files.
+     */
+    private synchronized boolean isLayoutKnown() {
+        if (this.layoutKnown == null) {
+            this.layoutKnown = false;
+            if (this.regionFolder != null && Files.isDirectory(this.regionFolder)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(this.regionFolder)) {
+                    boolean empty = true, hasRegionFiles = false;
+                    for (Path file : files) {
+                        empty = false;
+                        if (file.getFileName().toString().endsWith(".mca")) {
+                            hasRegionFiles = true;
+                            break;
+                        }
+                    }
+                    this.layoutKnown = empty || hasRegionFiles;
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return this.layoutKnown;
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.popcraft.stress.test;
+
+/**
+ * Walks regions in a square spiral around a centre region, one ring at a time, so that regions close to the centre
+ * come first. The spiral never ends, and skips regions outside of the world border limits.
+ */
+public class RegionSpiral {
+
+    // Chunks are limited to 30 million blocks from the centre of the world
+    public static final int MAX_REGION = 58593;
+
+    private final int centreX, centreZ;
+    private int ring, index;
+    private int regionX, regionZ;
+
+    /**
+     * Create a spiral around a region.
+     *
+     * @param centreX The centre region x coordinate.
+     * @param centreZ The centre region z coordinate.
+     */
+    public RegionSpiral(int centreX, int centreZ) {
+        this.centreX = centreX;
+        this.centreZ = centreZ;
+    }
+
+    /**
+     * Moves to the next region in the spiral, starting with the centre.
+     *
+     * @return False if there are no more regions within the world border limits.
+     */
+    public boolean next() {
+        while (this.ring <= 2 * MAX_REGION) {
+            int ring = this.ring, index = this.index;
+            int side = ring == 0 ? 0 : index / (2 * ring), offset = ring == 0 ? 0 : index % (2 * ring);
+            // Each ring has four sides of 2 * ring regions, starting from its corner with the lowest coordinates
+            switch (side) {
+                case 0:
+                    this.regionX = this.centreX - ring + offset;
+                    this.regionZ = this.centreZ - ring;
+                    break;
+                case 1:
+                    this.regionX = this.centreX + ring;
+                    this.regionZ = this.centreZ - ring + offset;
+                    break;
+                case 2:
+                    this.regionX = this.centreX + ring - offset;
+                    this.regionZ = this.centreZ + ring;
+                    break;
+                default:
+                    this.regionX = this.centreX - ring;
+                    this.regionZ = this.centreZ + ring - offset;
+                    break;
+            }
+            if (++this.index >= 8 * ring) {
+                ++this.ring;
+                this.index = 0;
+            }
+            if (Math.abs(this.regionX) <= MAX_REGION && Math.abs(this.regionZ) <= MAX_REGION) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getRegionX() {
+        return this.regionX;
+    }
+
+    public int getRegionZ() {
+        return this.regionZ;
+    }
+
+}
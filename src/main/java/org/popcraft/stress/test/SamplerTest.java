@@ -0,0 +1,39 @@
+package org.popcraft.stress.test;
+
+import org.bukkit.command.CommandSender;
+import org.popcraft.stress.Stress;
+import org.popcraft.stress.tps.LagSpikeSampler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class SamplerTest extends Test {
+
+    public SamplerTest(Stress plugin) {
+        super(plugin, "sampler");
+    }
+
+    @Override
+    public void run(CommandSender sender, Map<String, String> args) {
+        LagSpikeSampler sampler = plugin.getLagSpikeSampler();
+        if (sampler == null) {
+            sender.sendMessage(plugin.getMessage("test.sampler.disabled"));
+            return;
+        }
+        sender.sendMessage(plugin.getMessage("test.sampler.status",
+                sampler.getSampleIntervalMillis(),
+                sampler.getTotalSamples(),
+                sampler.getAverageSampleMicros(),
+                sampler.getOverhead() * 100,
+                sampler.getTotalOverhead() * 100,
+                sampler.getCapturedSlowTicks(),
+                sampler.getSkippedSlowTicks()));
+    }
+
+    @Override
+    public List<String> suggestedArguments() {
+        return new ArrayList<>();
+    }
+
+}
@@ -1,8 +1,14 @@
 package org.popcraft.stress.test;
 
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.popcraft.stress.Stress;
+import org.popcraft.stress.tps.Tick;
+import org.popcraft.stress.tps.TickBaselines;
+import org.popcraft.stress.tps.TickComparison;
+import org.popcraft.stress.tps.TickInterval;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -59,4 +65,86 @@ public abstract class Test {
         return list;
     }
 
+    /**
+     * To be used internally to suggest the baseline arguments, which any test with its own tick interval supports.
+     *
+     * @return A list which contains suggestions for saving and comparing with baselines.
+     */
+    protected List<String> suggestBaselineArguments() {
+        List<String> list = new ArrayList<>();
+        list.addAll(suggestArgument("baseline", ""));
+        list.addAll(suggestArgument("compare", plugin.getTickBaselines().getNames().toArray()));
+        return list;
+    }
+
+    /**
+     * Saves the ticks of this test's tick interval as a baseline, and compares them with an earlier baseline, if
+     * either was requested. This must be called on the main thread before the tick interval is removed.
+     *
+     * @param sender          The sender of the command that started this test.
+     * @param saveBaseline    The name to save the ticks as, or null.
+     * @param compareBaseline The name of the baseline to compare with, or null.
+     */
+    protected void finishBaselines(CommandSender sender, String saveBaseline, String compareBaseline) {
+        if (saveBaseline == null && compareBaseline == null) {
+            return;
+        }
+        TickInterval tickInterval = plugin.getTickProfiler().getInterval(this.name);
+        if (tickInterval == null) {
+            return;
+        }
+        List<Tick> ticks = tickInterval.getLastTicks(tickInterval.getTickCount());
+        TickBaselines tickBaselines = plugin.getTickBaselines();
+        // Baselines are written and read from disk, which should never hold up the main thread
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            if (compareBaseline != null) {
+                double[] baselineTickDurations;
+                try {
+                    baselineTickDurations = tickBaselines.load(compareBaseline);
+                } catch (IOException e) {
+                    sender.sendMessage(plugin.getMessage("test.baseline.error", compareBaseline, e.getMessage()));
+                    return;
+                }
+                double[] tickDurations = ticks.stream().mapToDouble(Tick::getTickDuration).toArray();
+                if (baselineTickDurations.length < 2 || tickDurations.length < 2) {
+                    sender.sendMessage(plugin.getMessage("test.baseline.too-few"));
+                } else {
+                    TickComparison comparison = new TickComparison(baselineTickDurations, tickDurations);
+                    String verdict;
+                    switch (comparison.getVerdict()) {
+                        case REGRESSED:
+                            verdict = plugin.getMessage("test.baseline.regressed");
+                            break;
+                        case IMPROVED:
+                            verdict = plugin.getMessage("test.baseline.improved");
+                            break;
+                        default:
+                            verdict = plugin.getMessage("test.baseline.unchanged");
+                            break;
+                    }
+                    sender.sendMessage(plugin.getMessage("test.baseline.comparison",
+                            compareBaseline,
+                            comparison.getCurrentTickCount(),
+                            comparison.getBaselineTickCount(),
+                            comparison.getAverageDelta(),
+                            comparison.getPercentileDelta(0),
+                            comparison.getPercentileDelta(1),
+                            comparison.getPercentileDelta(2),
+                            comparison.getPercentileDelta(3),
+                            comparison.getPValue(),
+                            comparison.getSlowerProbability() * 100,
+                            verdict));
+                }
+            }
+            if (saveBaseline != null) {
+                try {
+                    tickBaselines.save(saveBaseline, ticks);
+                    sender.sendMessage(plugin.getMessage("test.baseline.saved", ticks.size(), saveBaseline));
+                } catch (IOException e) {
+                    sender.sendMessage(plugin.getMessage("test.baseline.error", saveBaseline, e.getMessage()));
+                }
+            }
+        });
+    }
+
 }
@@ -6,8 +6,13 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.popcraft.stress.Stress;
+import org.popcraft.stress.tps.TickBaselines;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility methods for validating user arguments.
@@ -80,4 +85,62 @@ public class TestArgument {
         return world;
     }
 
+    public static long validateTime(CommandSender sender, Map<String, String> args, String inputName, String inputDefault)
+            throws IllegalArgumentException {
+        String arg = args.getOrDefault(inputName, inputDefault);
+        if (arg == null) {
+            sender.sendMessage(Stress.getPlugin().getMessage("test.general.missing-argument", inputName));
+            throw new IllegalArgumentException();
+        }
+        // Times may be now, a duration ago such as 90m or 2h, or a local date and time such as 2020-01-01T12:00
+        long now = System.currentTimeMillis();
+        if ("now".equalsIgnoreCase(arg)) {
+            return now;
+        }
+        if (arg.matches("\\d+[smhd]")) {
+            long amount = Long.parseLong(arg.substring(0, arg.length() - 1));
+            TimeUnit timeUnit;
+            switch (arg.charAt(arg.length() - 1)) {
+                case 's':
+                    timeUnit = TimeUnit.SECONDS;
+                    break;
+                case 'm':
+                    timeUnit = TimeUnit.MINUTES;
+                    break;
+                case 'h':
+                    timeUnit = TimeUnit.HOURS;
+                    break;
+                default:
+                    timeUnit = TimeUnit.DAYS;
+                    break;
+            }
+            return now - timeUnit.toMillis(amount);
+        }
+        try {
+            return LocalDateTime.parse(arg).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            sender.sendMessage(Stress.getPlugin().getMessage("test.general.invalid-argument", inputName, arg));
+            throw new IllegalArgumentException();
+        }
+    }
+
+    public static String validateBaseline(CommandSender sender, Map<String, String> args, String inputName, boolean mustExist)
+            throws IllegalArgumentException {
+        // Baselines are optional, so this is null if the argument was not given at all
+        if (!args.containsKey(inputName)) {
+            return null;
+        }
+        String arg = args.get(inputName);
+        if (arg == null || arg.isEmpty()) {
+            sender.sendMessage(Stress.getPlugin().getMessage("test.general.missing-argument", inputName));
+        } else if (!TickBaselines.isValidName(arg)) {
+            sender.sendMessage(Stress.getPlugin().getMessage("test.general.invalid-argument", inputName, arg));
+        } else if (mustExist && !Stress.getPlugin().getTickBaselines().exists(arg)) {
+            sender.sendMessage(Stress.getPlugin().getMessage("test.baseline.not-found", arg));
+        } else {
+            return arg;
+        }
+        throw new IllegalArgumentException();
+    }
+
 }
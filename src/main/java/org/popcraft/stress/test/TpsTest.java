@@ -18,6 +18,10 @@ public class TpsTest extends Test {
         if (args.containsKey("interval")) {
             String interval = args.get("interval");
             sender.sendMessage(plugin.getTickProfiler().tpsReport(interval));
+        } else if (args.containsKey("percentiles")) {
+            sender.sendMessage(plugin.getTickProfiler().tpsPercentilesReport());
+        } else if (args.containsKey("averages")) {
+            sender.sendMessage(plugin.getTickProfiler().tpsAveragesReport());
         } else if (args.containsKey("ticks")) {
             try {
                 int ticks = TestArgument.validateInt(sender, args, "ticks", 2, 2, null);
@@ -35,6 +39,8 @@ public class TpsTest extends Test {
         args.addAll(suggestArgument("interval",
                 "shortest", "short", "normal", "long", "longest"));
         args.addAll(suggestArgument("ticks", ""));
+        args.add("percentiles");
+        args.add("averages");
         return args;
     }
 
@@ -6,6 +6,7 @@ import org.popcraft.stress.Stress;
 public class BukkitSchedulerTickProfiler extends TickProfiler {
 
     private long tickTime;
+    private int tickNumber;
     private int tickTaskId;
 
     public BukkitSchedulerTickProfiler(final Stress plugin) {
@@ -17,10 +18,18 @@ public class BukkitSchedulerTickProfiler extends TickProfiler {
             if (lastTickTime == 0) {
                 return;
             }
-            this.update(new Tick(tickTime, lastTickTime));
+            this.update(++tickNumber, tickTime, lastTickTime);
         }, 0, 1);
     }
 
+    /**
+     * Ticks are only seen from a scheduled task, so each tick is taken to last until the next one starts.
+     */
+    @Override
+    public boolean measuresTickDuration() {
+        return false;
+    }
+
     @Override
     public void stop() {
         Bukkit.getScheduler().cancelTask(this.tickTaskId);
@@ -0,0 +1,99 @@
+package org.popcraft.stress.tps;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+public class ColorThresholds {
+
+    private final ChatColor defaultColor;
+    private final double[] thresholds;
+    private final ChatColor[] colors;
+
+    /**
+     * Create color thresholds which only use a default color.
+     *
+     * @param defaultColor The color to use for every value.
+     */
+    public ColorThresholds(ChatColor defaultColor) {
+        this.defaultColor = defaultColor;
+        this.thresholds = new double[0];
+        this.colors = new ChatColor[0];
+    }
+
+    /**
+     * Compile color thresholds from a configuration section, where each key is a threshold and each value is a color,
+     * and the "default" key is the color for values above every threshold.
+     *
+     * @param section      The configuration section, which may be null.
+     * @param defaultColor The default color if none is configured.
+     * @param logger       Logger for any invalid colors.
+     */
+    public ColorThresholds(ConfigurationSection section, ChatColor defaultColor, Logger logger) {
+        TreeMap<Double, ChatColor> sortedColors = new TreeMap<>();
+        ChatColor configuredDefaultColor = defaultColor;
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                ChatColor color = parseColor(section.getString(key), logger);
+                if (color == null) {
+                    continue;
+                }
+                if ("default".equals(key)) {
+                    configuredDefaultColor = color;
+                    continue;
+                }
+                try {
+                    sortedColors.put(Double.parseDouble(key), color);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        this.defaultColor = configuredDefaultColor;
+        this.thresholds = new double[sortedColors.size()];
+        this.colors = new ChatColor[sortedColors.size()];
+        int i = 0;
+        for (Map.Entry<Double, ChatColor> entry : sortedColors.entrySet()) {
+            this.thresholds[i] = entry.getKey();
+            this.colors[i] = entry.getValue();
+            ++i;
+        }
+    }
+
+    /**
+     * Gets the color for a value, which is the color of the lowest threshold that the value does not exceed.
+     *
+     * @param value The value.
+     * @return The matching color.
+     */
+    public ChatColor match(double value) {
+        if (Double.isNaN(value)) {
+            return this.defaultColor;
+        }
+        int low = 0, high = this.thresholds.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (this.thresholds[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low < this.thresholds.length ? this.colors[low] : this.defaultColor;
+    }
+
+    private static ChatColor parseColor(String colorString, Logger logger) {
+        if (colorString == null) {
+            return null;
+        }
+        try {
+            return ChatColor.valueOf(colorString.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid color: " + colorString);
+            return null;
+        }
+    }
+
+}
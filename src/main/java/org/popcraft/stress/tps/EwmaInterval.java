@@ -0,0 +1,134 @@
+package org.popcraft.stress.tps;
+
+public class EwmaInterval {
+
+    private final String name, shortName;
+    private final double timeConstantMillis;
+    // Exponentially decayed tick count, tick lengths, tick durations, and squared tick durations
+    private double tickCount, sumOfTickLengths, sumOfTickDurations, sumOfSquaredTickDurations;
+    private double elapsedMillis;
+
+    /**
+     * Create a new exponentially weighted moving average over a time interval. Unlike a {@link TickInterval}, this
+     * does not need to hold any ticks, so the memory used is fixed no matter how long the interval is. Each tick is
+     * weighted by how long ago it happened, so that a tick from one time interval ago counts for about a third as
+     * much as the latest one, in the same way as a load average.
+     *
+     * @param timeInterval The time unit string.
+     */
+    public EwmaInterval(String timeInterval) {
+        int ticks = TpsUtil.timeIntervalToTicks(timeInterval);
+        if (ticks <= 0) {
+            throw new IllegalArgumentException("Invalid time interval: " + timeInterval);
+        }
+        this.name = timeInterval;
+        this.shortName = TpsUtil.shortIntervalName(timeInterval);
+        this.timeConstantMillis = ticks * 50d;
+    }
+
+    /**
+     * Records a tick, decaying everything recorded before it by the tick length.
+     *
+     * @param tickLength   The tick length in milliseconds.
+     * @param tickDuration The tick duration in milliseconds.
+     */
+    public void update(double tickLength, double tickDuration) {
+        double decay = Math.exp(-Math.max(0, tickLength) / this.timeConstantMillis);
+        this.tickCount = this.tickCount * decay + 1;
+        this.sumOfTickLengths = this.sumOfTickLengths * decay + tickLength;
+        this.sumOfTickDurations = this.sumOfTickDurations * decay + tickDuration;
+        this.sumOfSquaredTickDurations = this.sumOfSquaredTickDurations * decay + tickDuration * tickDuration;
+        this.elapsedMillis += tickLength;
+    }
+
+    /**
+     * Adds the ticks of another moving average over the same time interval, which all happened before the ticks
+     * recorded by this one. They are decayed by the lengths of every tick recorded by this one, which gives the same
+     * averages as if they had been recorded first.
+     *
+     * @param earlier The moving average of the earlier ticks.
+     */
+    public void addEarlier(EwmaInterval earlier) {
+        double decay = Math.exp(-this.elapsedMillis / this.timeConstantMillis);
+        this.tickCount += earlier.tickCount * decay;
+        this.sumOfTickLengths += earlier.sumOfTickLengths * decay;
+        this.sumOfTickDurations += earlier.sumOfTickDurations * decay;
+        this.sumOfSquaredTickDurations += earlier.sumOfSquaredTickDurations * decay;
+        this.elapsedMillis += earlier.elapsedMillis;
+    }
+
+    /**
+     * Gets the full name of this interval.
+     *
+     * @return Interval name.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the short name of this interval.
+     *
+     * @return Short interval name.
+     */
+    public String getShortName() {
+        return this.shortName;
+    }
+
+    /**
+     * Gets the time constant of this interval, which is the length of the time interval it was created from.
+     *
+     * @return The time constant in milliseconds.
+     */
+    public double getTimeConstantMillis() {
+        return this.timeConstantMillis;
+    }
+
+    /**
+     * Checks whether any ticks have been recorded, which is needed for the averages to be meaningful.
+     *
+     * @return True if the averages are valid.
+     */
+    public boolean isValid() {
+        return this.tickCount > 0 && this.sumOfTickLengths > 0;
+    }
+
+    /**
+     * Gets how much of the interval has been observed so far, as averages are less smooth until then.
+     *
+     * @return The fraction of the time interval which has elapsed, up to one.
+     */
+    public double getWarmup() {
+        return Math.min(1, this.elapsedMillis / this.timeConstantMillis);
+    }
+
+    /**
+     * Gets the weighted average TPS.
+     *
+     * @return The TPS.
+     */
+    public double getTps() {
+        return this.tickCount / this.sumOfTickLengths * 1e3d;
+    }
+
+    /**
+     * Gets the weighted average tick duration.
+     *
+     * @return Average tick duration in milliseconds.
+     */
+    public double getAverageTickDuration() {
+        return this.sumOfTickDurations / this.tickCount;
+    }
+
+    /**
+     * Gets the weighted standard deviation of the tick duration.
+     *
+     * @return Standard deviation of the tick duration in milliseconds.
+     */
+    public double getStandardDeviationTickDuration() {
+        double variance = this.sumOfSquaredTickDurations / this.tickCount - Math.pow(this.getAverageTickDuration(), 2);
+        // The variance will never be zero, except for when rare rounding errors occur
+        return variance < 0 ? 0 : Math.sqrt(variance);
+    }
+
+}
@@ -0,0 +1,329 @@
+package org.popcraft.stress.tps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class LagSpikeSampler implements TickListener, Runnable {
+
+    // The sampling interval is adjusted at most this often, based on the overhead since the last adjustment
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Room is kept for this many frames per sample on average, so that memory use is fixed whatever the stack depth
+    private static final int FRAMES_PER_SAMPLE = 128;
+    // Deeper stacks lose their leaf frames, since collapsed stacks start from the root frame
+    private static final int MAX_DEPTH = 1024;
+    // The frame table is cleared along with every sample before it grows past this many frames
+    private static final int MAX_FRAMES = 1 << 16;
+
+    private final Thread mainThread;
+    private final File directory;
+    private final Logger logger;
+    private final long minSampleIntervalNanos;
+    private final double thresholdMillis;
+    private final double maxOverhead;
+    private final long cooldownNanos;
+    // Ring of the most recent samples, which is only touched by the sampler thread. Each sample is a run of frame ids
+    // in the frame ring starting from the root frame, which is valid until the frame ring wraps around past it.
+    private final long[] sampleTimes, sampleStarts;
+    private final int[] sampleDepths;
+    private final int[] frameRing;
+    private long sampleCount, frameCount, firstSample;
+    // Frame ids of every stack trace element seen, and the class and method name of each frame id
+    private final Map<StackTraceElement, Integer> frameIds = new HashMap<>();
+    private final List<String> frameNames = new ArrayList<>();
+    // Slow ticks reported by the main thread, as start and end times in nanoseconds
+    private final ConcurrentLinkedQueue<long[]> slowTicks = new ConcurrentLinkedQueue<>();
+    private long lastSlowTickNanos = Long.MIN_VALUE / 2;
+    private Thread samplerThread;
+    private volatile boolean running;
+    // Statistics, which are written by the sampler thread and read by anything
+    private volatile long sampleIntervalNanos;
+    private volatile long totalSamples, totalSampleNanos, totalElapsedNanos;
+    private volatile double overhead;
+    private volatile int capturedSlowTicks, skippedSlowTicks;
+
+    /**
+     * Create a sampler, which periodically records the stack of the main thread into a fixed size ring, so that the
+     * cause of any tick that is slower than a threshold can be written out as collapsed stacks for a flame graph.
+     * The sampling interval is increased whenever sampling takes more than the maximum fraction of time, and
+     * returns to the configured interval when it can.
+     * <p>
+     * Samples are kept as ids of their frames in fixed size arrays, which take about 530 bytes per sample, along
+     * with a table of every distinct frame seen, which is limited to 65536 frames. Stacks deeper than 1024 frames
+     * lose their leaf frames, and fewer samples are kept when stacks are much deeper than 128 frames.
+     *
+     * @param mainThread       The thread to sample.
+     * @param directory        The directory to write collapsed stacks to.
+     * @param logger           Logger for slow ticks.
+     * @param intervalMillis   The sampling interval in milliseconds.
+     * @param thresholdMillis  The tick duration in milliseconds above which a tick is written out.
+     * @param bufferSize       The number of samples to keep, which limits the longest tick that can be captured.
+     * @param maxOverheadRatio The maximum fraction of time to spend sampling.
+     * @param cooldownMillis   The minimum time in milliseconds between writing out slow ticks.
+     */
+    public LagSpikeSampler(Thread mainThread, File directory, Logger logger, double intervalMillis,
+                           double thresholdMillis, int bufferSize, double maxOverheadRatio, long cooldownMillis) {
+        this.mainThread = mainThread;
+        this.directory = directory;
+        this.logger = logger;
+        this.minSampleIntervalNanos = Math.max(100_000L, (long) (intervalMillis * 1e6d));
+        this.sampleIntervalNanos = this.minSampleIntervalNanos;
+        this.thresholdMillis = thresholdMillis;
+        this.maxOverhead = maxOverheadRatio;
+        this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(cooldownMillis);
+        this.sampleTimes = new long[Math.max(16, bufferSize)];
+        this.sampleStarts = new long[this.sampleTimes.length];
+        this.sampleDepths = new int[this.sampleTimes.length];
+        this.frameRing = new int[this.sampleTimes.length * FRAMES_PER_SAMPLE];
+    }
+
+    /**
+     * Starts the sampler thread.
+     */
+    public void start() {
+        this.running = true;
+        this.samplerThread = new Thread(this, "Stress Lag Spike Sampler");
+        this.samplerThread.setDaemon(true);
+        this.samplerThread.start();
+    }
+
+    /**
+     * Stops the sampler thread, and waits for it to finish.
+     */
+    public void stop() {
+        this.running = false;
+        if (this.samplerThread != null) {
+            LockSupport.unpark(this.samplerThread);
+            try {
+                this.samplerThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.samplerThread = null;
+        }
+    }
+
+    /**
+     * Checks each tick against the threshold. Slow ticks are handed to the sampler thread, so the main thread only
+     * does a comparison for ticks which are not slow.
+     */
+    @Override
+    public void onTick(int tickNumber, double tickTime, double tickLength, double tickDuration,
+                       double tickSleepDuration) {
+        if (tickDuration >= this.thresholdMillis) {
+            long endNanos = (long) (tickTime * 1e6d);
+            this.slowTicks.offer(new long[]{endNanos - (long) (tickDuration * 1e6d), endNanos});
+        }
+    }
+
+    @Override
+    public void run() {
+        long adjustStart = System.nanoTime(), adjustSampleNanos = 0;
+        while (this.running) {
+            long start = System.nanoTime();
+            StackTraceElement[] stack = this.mainThread.getStackTrace();
+            long stackEnd = System.nanoTime();
+            this.store(stack, start + (stackEnd - start) / 2);
+            // Storing the sample counts towards the overhead, as well as taking it
+            long end = System.nanoTime();
+            this.totalSamples = this.sampleCount;
+            this.totalSampleNanos += end - start;
+            adjustSampleNanos += end - start;
+            // Keep the time spent sampling within bounds, backing off when the main thread has deep stacks
+            if (end - adjustStart >= ADJUST_INTERVAL_NANOS) {
+                this.totalElapsedNanos += end - adjustStart;
+                this.overhead = (double) adjustSampleNanos / (end - adjustStart);
+                if (this.overhead > this.maxOverhead) {
+                    long factor = Math.max(2, (long) Math.ceil(this.overhead / this.maxOverhead));
+                    this.sampleIntervalNanos = Math.min(MAX_SAMPLE_INTERVAL_NANOS, this.sampleIntervalNanos * factor);
+                } else if (this.overhead < this.maxOverhead / 4) {
+                    this.sampleIntervalNanos = Math.max(this.minSampleIntervalNanos, this.sampleIntervalNanos / 2);
+                }
+                adjustStart = end;
+                adjustSampleNanos = 0;
+            }
+            long[] slowTick;
+            while ((slowTick = this.slowTicks.poll()) != null) {
+                this.capture(slowTick[0], slowTick[1]);
+            }
+            LockSupport.parkNanos(this.sampleIntervalNanos - (System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Stores a sample as frame ids in the ring, so that only the stack trace elements of new frames are kept.
+     *
+     * @param stack      The stack of the main thread.
+     * @param sampleTime The time in nanoseconds the sample was taken.
+     */
+    private void store(StackTraceElement[] stack, long sampleTime) {
+        if (this.frameNames.size() + stack.length > MAX_FRAMES) {
+            this.frameIds.clear();
+            this.frameNames.clear();
+            // Samples stored so far refer to the old frame ids
+            this.firstSample = this.sampleCount;
+        }
+        int depth = Math.min(stack.length, MAX_DEPTH);
+        int index = (int) (this.sampleCount++ % this.sampleTimes.length);
+        this.sampleTimes[index] = sampleTime;
+        this.sampleStarts[index] = this.frameCount;
+        this.sampleDepths[index] = depth;
+        for (int frame = stack.length - 1; frame >= stack.length - depth; --frame) {
+            Integer frameId = this.frameIds.get(stack[frame]);
+            if (frameId == null) {
+                frameId = this.frameNames.size();
+                this.frameNames.add(stack[frame].getClassName() + '.' + stack[frame].getMethodName());
+                this.frameIds.put(stack[frame], frameId);
+            }
+            this.frameRing[(int) (this.frameCount++ % this.frameRing.length)] = frameId;
+        }
+    }
+
+    /**
+     * Aggregates the samples taken during a slow tick into collapsed stacks, and writes them out.
+     *
+     * @param startNanos The start time of the tick.
+     * @param endNanos   The end time of the tick.
+     */
+    private void capture(long startNanos, long endNanos) {
+        if (endNanos - this.lastSlowTickNanos < this.cooldownNanos) {
+            ++this.skippedSlowTicks;
+            return;
+        }
+        this.lastSlowTickNanos = endNanos;
+        Map<String, Integer> collapsedStacks = new HashMap<>();
+        int sampleTotal = 0;
+        long oldest = Math.max(this.firstSample, this.sampleCount - this.sampleTimes.length);
+        // Samples whose frames were overwritten by later ones are dropped as well
+        while (oldest < this.sampleCount && this.sampleStarts[(int) (oldest % this.sampleTimes.length)]
+                < this.frameCount - this.frameRing.length) {
+            ++oldest;
+        }
+        boolean truncated = oldest > 0 && oldest < this.sampleCount
+                && this.sampleTimes[(int) (oldest % this.sampleTimes.length)] > startNanos;
+        StringBuilder builder = new StringBuilder();
+        for (long sample = oldest; sample < this.sampleCount; ++sample) {
+            int index = (int) (sample % this.sampleTimes.length);
+            if (this.sampleTimes[index] < startNanos || this.sampleTimes[index] > endNanos) {
+                continue;
+            }
+            builder.setLength(0);
+            // Collapsed stacks start from the root frame, which is how frames are stored
+            for (int frame = 0; frame < this.sampleDepths[index]; ++frame) {
+                if (frame > 0) {
+                    builder.append(';');
+                }
+                long position = this.sampleStarts[index] + frame;
+                builder.append(this.frameNames.get(this.frameRing[(int) (position % this.frameRing.length)]));
+            }
+            collapsedStacks.merge(builder.toString(), 1, Integer::sum);
+            ++sampleTotal;
+        }
+        double tickMillis = (endNanos - startNanos) / 1e6d;
+        if (sampleTotal == 0) {
+            this.logger.info(String.format("Tick took %.1f ms, but no samples were taken during it.", tickMillis));
+            return;
+        }
+        List<Map.Entry<String, Integer>> sortedStacks = new ArrayList<>(collapsedStacks.entrySet());
+        sortedStacks.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        File file = new File(this.directory, String.format("lag-%d-%.0fms.collapsed", System.currentTimeMillis(),
+                tickMillis));
+        try {
+            if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+                throw new IOException("Unable to create " + this.directory);
+            }
+            try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+                for (Map.Entry<String, Integer> entry : sortedStacks) {
+                    writer.print(entry.getKey());
+                    writer.print(' ');
+                    writer.println(entry.getValue());
+                }
+            }
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Unable to write lag spike samples", e);
+            return;
+        }
+        ++this.capturedSlowTicks;
+        String hottestStack = sortedStacks.get(0).getKey();
+        String hottestFrame = hottestStack.substring(hottestStack.lastIndexOf(';') + 1);
+        this.logger.info(String.format("Tick took %.1f ms, %d samples%s saved to %s, most often in %s (%d%%)",
+                tickMillis, sampleTotal, truncated ? " (truncated)" : "", file.getName(), hottestFrame,
+                100 * sortedStacks.get(0).getValue() / sampleTotal));
+    }
+
+    /**
+     * Gets the current sampling interval, which may be longer than configured to keep the overhead bounded.
+     *
+     * @return The sampling interval in milliseconds.
+     */
+    public double getSampleIntervalMillis() {
+        return this.sampleIntervalNanos / 1e6d;
+    }
+
+    /**
+     * Gets the number of samples taken.
+     *
+     * @return The sample count.
+     */
+    public long getTotalSamples() {
+        return this.totalSamples;
+    }
+
+    /**
+     * Gets the average time taken to sample the main thread, during which it may be paused, and to store the sample.
+     *
+     * @return The average sample time in microseconds.
+     */
+    public double getAverageSampleMicros() {
+        long totalSamples = this.totalSamples;
+        return totalSamples == 0 ? 0 : this.totalSampleNanos / 1e3d / totalSamples;
+    }
+
+    /**
+     * Gets the fraction of time spent sampling over the last second.
+     *
+     * @return The overhead, from 0 to 1.
+     */
+    public double getOverhead() {
+        return this.overhead;
+    }
+
+    /**
+     * Gets the fraction of time spent sampling since the sampler started.
+     *
+     * @return The overhead, from 0 to 1.
+     */
+    public double getTotalOverhead() {
+        long totalElapsedNanos = this.totalElapsedNanos;
+        return totalElapsedNanos == 0 ? this.overhead : (double) this.totalSampleNanos / totalElapsedNanos;
+    }
+
+    /**
+     * Gets the number of slow ticks which were written out.
+     *
+     * @return The captured slow tick count.
+     */
+    public int getCapturedSlowTicks() {
+        return this.capturedSlowTicks;
+    }
+
+    /**
+     * Gets the number of slow ticks which were not written out, because they happened too soon after another.
+     *
+     * @return The skipped slow tick count.
+     */
+    public int getSkippedSlowTicks() {
+        return this.skippedSlowTicks;
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.popcraft.stress.tps;
+
+import java.util.Arrays;
+
+public class MinMaxTree {
+
+    private final int size;
+    private final double[] min, max;
+
+    /**
+     * Create a new segment tree, which answers minimum and maximum queries over any range of its values in
+     * logarithmic time.
+     *
+     * @param capacity The number of values.
+     */
+    public MinMaxTree(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.size = size;
+        this.min = new double[2 * size];
+        this.max = new double[2 * size];
+        Arrays.fill(this.min, Double.MAX_VALUE);
+        Arrays.fill(this.max, -Double.MAX_VALUE);
+    }
+
+    /**
+     * Sets a value, updating every range which contains it.
+     *
+     * @param index The index of the value.
+     * @param value The new value.
+     */
+    public void set(int index, double value) {
+        int node = index + this.size;
+        this.min[node] = value;
+        this.max[node] = value;
+        for (node >>= 1; node > 0; node >>= 1) {
+            this.min[node] = Math.min(this.min[2 * node], this.min[2 * node + 1]);
+            this.max[node] = Math.max(this.max[2 * node], this.max[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Gets the minimum value in a range.
+     *
+     * @param from The first index in the range, inclusive.
+     * @param to   The last index in the range, exclusive.
+     * @return The minimum value, or {@link Double#MAX_VALUE} if the range is empty.
+     */
+    public double min(int from, int to) {
+        double result = Double.MAX_VALUE;
+        for (int left = from + this.size, right = to + this.size; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                result = Math.min(result, this.min[left++]);
+            }
+            if ((right & 1) == 1) {
+                result = Math.min(result, this.min[--right]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the maximum value in a range.
+     *
+     * @param from The first index in the range, inclusive.
+     * @param to   The last index in the range, exclusive.
+     * @return The maximum value, or negative {@link Double#MAX_VALUE} if the range is empty.
+     */
+    public double max(int from, int to) {
+        double result = -Double.MAX_VALUE;
+        for (int left = from + this.size, right = to + this.size; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                result = Math.max(result, this.max[left++]);
+            }
+            if ((right & 1) == 1) {
+                result = Math.max(result, this.max[--right]);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.popcraft.stress.tps;
+
+public class MonotonicQueue {
+
+    private final boolean minimum;
+    private long[] sequences;
+    private double[] values;
+    private int head, size;
+
+    /**
+     * Create a new monotonic queue, which tracks the minimum or maximum of a sliding window of values. Every value is
+     * added and removed at most once, so keeping the extremum up to date takes amortized constant time.
+     *
+     * @param minimum  True to track the minimum value, false to track the maximum value.
+     * @param capacity The number of values that may need to be kept, which is one more than the window size.
+     */
+    public MonotonicQueue(boolean minimum, int capacity) {
+        this.minimum = minimum;
+        this.sequences = new long[Math.max(1, capacity)];
+        this.values = new double[Math.max(1, capacity)];
+    }
+
+    /**
+     * Adds a new value, removing any older values which can no longer become the extremum of the window. If the
+     * queue is full, the new value is dropped, which is only correct for windows that never remove values.
+     *
+     * @param sequence The sequence number of the value.
+     * @param value    The value.
+     */
+    public void add(long sequence, double value) {
+        while (this.size > 0 && this.isBetterOrEqual(value, this.values[this.indexOf(this.size - 1)])) {
+            --this.size;
+        }
+        if (this.size == this.values.length) {
+            return;
+        }
+        int index = this.indexOf(this.size++);
+        this.sequences[index] = sequence;
+        this.values[index] = value;
+    }
+
+    /**
+     * Removes the value with the given sequence number, if it is still part of the queue.
+     *
+     * @param sequence The sequence number of the value leaving the window.
+     * @return True if the extremum was removed, meaning that the extremum may have changed.
+     */
+    public boolean remove(long sequence) {
+        if (this.size > 0 && this.sequences[this.head] <= sequence) {
+            this.head = this.indexOf(1);
+            --this.size;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the current extremum.
+     *
+     * @return The minimum or maximum value in the window, or zero if the window is empty.
+     */
+    public double peek() {
+        return this.size == 0 ? 0 : this.values[this.head];
+    }
+
+    /**
+     * Gets the sequence number of the current extremum.
+     *
+     * @return The sequence number of the minimum or maximum value in the window, or -1 if the window is empty.
+     */
+    public long peekSequence() {
+        return this.size == 0 ? -1 : this.sequences[this.head];
+    }
+
+    /**
+     * Gets the number of values currently kept by this queue.
+     *
+     * @return The queue size.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Increases the capacity of this queue, keeping all current values.
+     *
+     * @param capacity The new capacity.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= this.values.length) {
+            return;
+        }
+        long[] newSequences = new long[capacity];
+        double[] newValues = new double[capacity];
+        for (int i = 0; i < this.size; ++i) {
+            newSequences[i] = this.sequences[this.indexOf(i)];
+            newValues[i] = this.values[this.indexOf(i)];
+        }
+        this.sequences = newSequences;
+        this.values = newValues;
+        this.head = 0;
+    }
+
+    /**
+     * Removes all values from this queue.
+     */
+    public void clear() {
+        this.head = 0;
+        this.size = 0;
+    }
+
+    private boolean isBetterOrEqual(double value, double other) {
+        return this.minimum ? value <= other : value >= other;
+    }
+
+    private int indexOf(int offset) {
+        return (this.head + offset) % this.values.length;
+    }
+
+}
@@ -0,0 +1,300 @@
+package org.popcraft.stress.tps;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginEnableEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class PluginAttribution implements TickListener, Listener {
+
+    // Cumulative times are copied this often, which is the resolution of the intervals they are reported over
+    private static final int SNAPSHOT_TICKS = 20;
+    // Async counters are a cache line apart, so plugins handling events on different threads do not contend
+    private static final int ASYNC_STRIDE = 8;
+    // Plugins which are loaded later than expected share the last slot
+    private static final int EXTRA_SLOTS = 16;
+
+    private final Plugin owner;
+    private final TickHistory history;
+    private final Thread mainThread;
+    private final Plugin[] plugins;
+    private int pluginCount;
+    // Main thread time is only written and read by the main thread, so it needs no synchronization
+    private final long[] mainNanos;
+    private final AtomicLongArray asyncNanos;
+    // Main thread time spent in listeners called by the current listener, which is not attributed to it
+    private long nestedNanos;
+    // Ring of snapshots of the cumulative times, with the tick history sequence and tick time of each
+    private final long[] snapshotSequences;
+    private final double[] snapshotTimes;
+    private final long[] snapshotMainNanos, snapshotAsyncNanos;
+    private long snapshotCount;
+    private int ticksSinceSnapshot;
+    private boolean attached;
+
+    /**
+     * Create an attribution of main thread time to plugins, by wrapping every registered event listener with timing.
+     * Time is accumulated in primitive counters per plugin, and snapshots of them are kept for as long as the tick
+     * history, so the time taken by each plugin can be reported over any tick interval. Listeners called by another
+     * listener are only counted towards their own plugin.
+     * <p>
+     * Everything except counting time for async events must happen on the main thread.
+     *
+     * @param owner   The plugin which owns this attribution.
+     * @param history The tick history, which decides how long snapshots are kept for.
+     */
+    public PluginAttribution(Plugin owner, TickHistory history) {
+        this.owner = owner;
+        this.history = history;
+        this.mainThread = Thread.currentThread();
+        this.plugins = new Plugin[Bukkit.getPluginManager().getPlugins().length + EXTRA_SLOTS];
+        this.mainNanos = new long[this.plugins.length];
+        this.asyncNanos = new AtomicLongArray(this.plugins.length * ASYNC_STRIDE);
+        int snapshots = history.getCapacity() / SNAPSHOT_TICKS + 2;
+        this.snapshotSequences = new long[snapshots];
+        this.snapshotTimes = new double[snapshots];
+        this.snapshotMainNanos = new long[snapshots * this.plugins.length];
+        this.snapshotAsyncNanos = new long[snapshots * this.plugins.length];
+    }
+
+    /**
+     * Starts attributing time, by wrapping the listeners of every plugin, and of every plugin enabled later on.
+     */
+    public void attach() {
+        if (this.attached) {
+            return;
+        }
+        this.attached = true;
+        Bukkit.getPluginManager().registerEvents(this, this.owner);
+        this.wrapListeners();
+    }
+
+    /**
+     * Stops attributing time, by putting back every original listener.
+     */
+    public void detach() {
+        if (!this.attached) {
+            return;
+        }
+        this.attached = false;
+        HandlerList.unregisterAll(this);
+        for (HandlerList handlerList : HandlerList.getHandlerLists()) {
+            // Async events which are called in between wait for the full list, since baking it takes the same lock
+            synchronized (handlerList) {
+                RegisteredListener[] listeners = handlerList.getRegisteredListeners();
+                if (Arrays.stream(listeners).noneMatch(listener -> listener instanceof AttributedListener)) {
+                    continue;
+                }
+                for (RegisteredListener listener : listeners) {
+                    handlerList.unregister(listener);
+                }
+                for (RegisteredListener listener : listeners) {
+                    handlerList.register(listener instanceof AttributedListener ?
+                            ((AttributedListener) listener).delegate : listener);
+                }
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        this.wrapListeners();
+    }
+
+    /**
+     * Wraps every listener which is not yet wrapped. Listeners are registered again in the same order, so the order
+     * in which they are called does not change, while holding the lock of their handler list, so events called on
+     * other threads never see only some of them.
+     *
+     * @return The number of listeners wrapped.
+     */
+    public int wrapListeners() {
+        int wrapped = 0;
+        for (HandlerList handlerList : HandlerList.getHandlerLists()) {
+            // Async events which are called in between wait for the full list, since baking it takes the same lock
+            synchronized (handlerList) {
+                RegisteredListener[] listeners = handlerList.getRegisteredListeners();
+                if (Arrays.stream(listeners).allMatch(listener -> listener instanceof AttributedListener)) {
+                    continue;
+                }
+                for (RegisteredListener listener : listeners) {
+                    handlerList.unregister(listener);
+                }
+                for (RegisteredListener listener : listeners) {
+                    if (listener instanceof AttributedListener) {
+                        handlerList.register(listener);
+                    } else {
+                        handlerList.register(this.wrap(listener));
+                        ++wrapped;
+                    }
+                }
+            }
+        }
+        return wrapped;
+    }
+
+    /**
+     * Wraps a listener so that the time it takes is attributed to its plugin.
+     *
+     * @param listener The listener.
+     * @return The wrapped listener.
+     */
+    public RegisteredListener wrap(RegisteredListener listener) {
+        return new AttributedListener(this, listener, this.slotOf(listener.getPlugin()));
+    }
+
+    private int slotOf(Plugin plugin) {
+        for (int slot = 0; slot < this.pluginCount; ++slot) {
+            if (this.plugins[slot] == plugin) {
+                return slot;
+            }
+        }
+        if (this.pluginCount == this.plugins.length - 1) {
+            return this.plugins.length - 1;
+        }
+        this.plugins[this.pluginCount] = plugin;
+        return this.pluginCount++;
+    }
+
+    /**
+     * Copies the cumulative times every few ticks.
+     */
+    @Override
+    public void onTick(int tickNumber, double tickTime, double tickLength, double tickDuration,
+                       double tickSleepDuration) {
+        if (++this.ticksSinceSnapshot < SNAPSHOT_TICKS) {
+            return;
+        }
+        this.ticksSinceSnapshot = 0;
+        int row = (int) (this.snapshotCount % this.snapshotSequences.length);
+        this.snapshotSequences[row] = this.history.getTotalTickCount();
+        this.snapshotTimes[row] = tickTime;
+        int offset = row * this.plugins.length;
+        System.arraycopy(this.mainNanos, 0, this.snapshotMainNanos, offset, this.plugins.length);
+        for (int slot = 0; slot < this.plugins.length; ++slot) {
+            this.snapshotAsyncNanos[offset + slot] = this.asyncNanos.get(slot * ASYNC_STRIDE);
+        }
+        ++this.snapshotCount;
+    }
+
+    /**
+     * Calculates the time taken by each plugin over the most recent ticks, to the resolution of the snapshots.
+     *
+     * @param ticks The number of ticks to report over.
+     * @return The report, or null if too few ticks have been attributed.
+     */
+    public Report report(int ticks) {
+        if (this.snapshotCount < 2) {
+            return null;
+        }
+        int rows = this.snapshotSequences.length;
+        int last = (int) ((this.snapshotCount - 1) % rows);
+        long oldest = Math.max(0, this.snapshotCount - rows);
+        // Find the newest snapshot at least the requested number of ticks old, or the oldest one if there is none
+        long first = oldest;
+        for (long snapshot = this.snapshotCount - 2; snapshot >= oldest; --snapshot) {
+            first = snapshot;
+            if (this.snapshotSequences[(int) (snapshot % rows)] <= this.snapshotSequences[last] - ticks) {
+                break;
+            }
+        }
+        int from = (int) (first % rows);
+        Report report = new Report();
+        report.tickCount = (int) (this.snapshotSequences[last] - this.snapshotSequences[from]);
+        report.durationMillis = this.snapshotTimes[last] - this.snapshotTimes[from];
+        long fromSequence = this.snapshotSequences[from], toSequence = this.snapshotSequences[last];
+        report.avgTickDurationMillis = this.history.contains(fromSequence) ?
+                this.history.getSumOfTickDurations(fromSequence, toSequence) / report.tickCount : Double.NaN;
+        for (int slot = 0; slot < this.plugins.length; ++slot) {
+            long mainNanos = this.snapshotMainNanos[last * this.plugins.length + slot] -
+                    this.snapshotMainNanos[from * this.plugins.length + slot];
+            long asyncNanos = this.snapshotAsyncNanos[last * this.plugins.length + slot] -
+                    this.snapshotAsyncNanos[from * this.plugins.length + slot];
+            if (mainNanos == 0 && asyncNanos == 0) {
+                continue;
+            }
+            Contribution contribution = new Contribution();
+            contribution.plugin = this.plugins[slot] == null ? "Other" : this.plugins[slot].getName();
+            contribution.mainMillisPerTick = mainNanos / 1e6d / report.tickCount;
+            contribution.asyncMillisPerSecond = asyncNanos / 1e3d / report.durationMillis;
+            report.attributedMillisPerTick += contribution.mainMillisPerTick;
+            report.contributions.add(contribution);
+        }
+        report.contributions.sort(Comparator.comparingDouble((Contribution contribution) ->
+                contribution.mainMillisPerTick).reversed());
+        return report;
+    }
+
+    public static class Report {
+
+        public int tickCount;
+        public double durationMillis;
+        public double avgTickDurationMillis;
+        public double attributedMillisPerTick;
+        // Sorted by main thread time, most first
+        public final List<Contribution> contributions = new ArrayList<>();
+
+    }
+
+    public static class Contribution {
+
+        public String plugin;
+        public double mainMillisPerTick;
+        public double asyncMillisPerSecond;
+
+    }
+
+    private static class AttributedListener extends RegisteredListener {
+
+        private final PluginAttribution attribution;
+        private final RegisteredListener delegate;
+        private final int slot;
+
+        private AttributedListener(PluginAttribution attribution, RegisteredListener delegate, int slot) {
+            super(delegate.getListener(), (listener, event) -> delegate.callEvent(event), delegate.getPriority(),
+                    delegate.getPlugin(), delegate.isIgnoringCancelled());
+            this.attribution = attribution;
+            this.delegate = delegate;
+            this.slot = slot;
+        }
+
+        @Override
+        public void callEvent(Event event) throws EventException {
+            PluginAttribution attribution = this.attribution;
+            if (Thread.currentThread() != attribution.mainThread) {
+                long start = System.nanoTime();
+                try {
+                    this.delegate.callEvent(event);
+                } finally {
+                    attribution.asyncNanos.getAndAdd(this.slot * ASYNC_STRIDE, System.nanoTime() - start);
+                }
+                return;
+            }
+            long outerNestedNanos = attribution.nestedNanos;
+            attribution.nestedNanos = 0;
+            long start = System.nanoTime();
+            try {
+                this.delegate.callEvent(event);
+            } finally {
+                long end = System.nanoTime();
+                // Time spent in nested listeners was already attributed to them
+                attribution.mainNanos[this.slot] += end - start - attribution.nestedNanos;
+                attribution.nestedNanos = outerNestedNanos + (end - start);
+            }
+        }
+
+    }
+
+}
@@ -1,7 +1,5 @@
 package org.popcraft.stress.tps;
 
-import java.util.LinkedList;
-import java.util.ListIterator;
 import java.util.concurrent.TimeUnit;
 
 public class Result {
@@ -19,10 +17,23 @@ public class Result {
     public double maxTickDurationMillis;
     public double avgTickDurationMillis;
     public double stdevTickDurationMillis;
+    public double p50TickDurationMillis;
+    public double p90TickDurationMillis;
+    public double p99TickDurationMillis;
+    public double p999TickDurationMillis;
     public double tps;
+    public double gcTimeMillis;
+    public long gcCount;
+    // The fraction of the ticking duration spent paused for garbage collection, from 0 to 1
+    public double gcShare;
+    public long allocatedBytes;
+    // Bytes allocated by the main thread per second
+    public double allocationRate;
     // Debug information
     public int findNewTickCount;
     public double findNewTickAverageMillis;
+    // The total number of ticks in the tick history when this result was calculated
+    long totalTickCount;
 
     /**
      * Create a result using the entire tick interval.
@@ -30,7 +41,7 @@ public class Result {
      * @param tickInterval The tick interval.
      */
     public Result(TickInterval tickInterval) {
-        this(tickInterval, tickInterval.getTickCount());
+        this(tickInterval, Integer.MAX_VALUE);
     }
 
     /**
@@ -61,12 +72,29 @@ public class Result {
      * @param tickCount    The tick count. If less than the tick interval's tick count, this is for a sub-interval.
      */
     public Result(TickInterval tickInterval, int tickCount) {
+        tickInterval.getHistory().read(() -> this.calculate(tickInterval, tickCount));
+    }
+
+    /**
+     * Calculates this result, which may happen more than once if the tick interval changed while reading it.
+     *
+     * @param tickInterval The tick interval.
+     * @param tickCount    The tick count. If less than the tick interval's tick count, this is for a sub-interval.
+     */
+    private void calculate(TickInterval tickInterval, int tickCount) {
+        this.isValid = false;
+        this.totalTickCount = tickInterval.getHistory().getTotalTickCount();
         this.tickCount = tickCount;
         int totalTicks = tickInterval.getTickCount();
         // We may need to truncate the tick count for this result if there is not enough timing information
         if (this.tickCount > totalTicks) {
             this.tickCount = totalTicks;
         }
+        // Sub-intervals are calculated from the tick history, which may hold fewer ticks than an unbounded interval
+        TickHistory history = tickInterval.getHistory();
+        if (this.tickCount < totalTicks && this.tickCount > history.getTickCount()) {
+            this.tickCount = history.getTickCount();
+        }
         // We can't generate a valid TPS report if there is not a tick interval
         if (this.tickCount < 2) {
             this.isValid = false;
@@ -75,52 +103,53 @@ public class Result {
         // The number of tick intervals is always one less than the tick count
         this.tickIntervals = this.tickCount - 1;
         // Now calculate some information about the interval.
-        // Sub-intervals will be less efficient to compute, because some statistics will not be cached.
-        LinkedList<Tick> ticks = tickInterval.getTicks();
-        Tick firstTick;
-        if (this.tickCount == totalTicks) {
-            firstTick = ticks.getFirst();
-        } else {
-            firstTick = ticks.get(totalTicks - this.tickCount);
-        }
-        Tick lastTick = ticks.getLast();
-        this.tickTimeStartMillis = firstTick.getTickTime();
-        this.tickTimeEndMillis = lastTick.getTickTime();
+        // Sub-intervals are calculated from cumulative sums and range queries over the tick history instead.
+        this.tickTimeStartMillis = tickInterval.getTickTime(totalTicks - this.tickCount);
+        this.tickTimeEndMillis = tickInterval.getTickTime(totalTicks - 1);
         this.tickingDurationMillis = this.tickTimeEndMillis - this.tickTimeStartMillis;
         this.tickingDuration = this.tickingDurationMillis / 1e3d;
         // Get the current tick duration
-        this.currentTickDurationMillis = lastTick.getTickDuration();
+        this.currentTickDurationMillis = tickInterval.getTickDuration(totalTicks - 1);
         // Get the minimum, average, maximum, and standard deviation tick durations
         if (this.tickCount == totalTicks) {
             this.minTickDurationMillis = tickInterval.getMinTickDuration();
             this.avgTickDurationMillis = tickInterval.getAverageTickDuration();
             this.maxTickDurationMillis = tickInterval.getMaxTickDuration();
             this.stdevTickDurationMillis = tickInterval.getStandardDeviationTickDuration();
+            this.p50TickDurationMillis = tickInterval.getTickDurationPercentile(50);
+            this.p90TickDurationMillis = tickInterval.getTickDurationPercentile(90);
+            this.p99TickDurationMillis = tickInterval.getTickDurationPercentile(99);
+            this.p999TickDurationMillis = tickInterval.getTickDurationPercentile(99.9);
+            this.gcTimeMillis = tickInterval.getGcTime();
+            this.gcCount = tickInterval.getGcCount();
+            this.allocatedBytes = tickInterval.getAllocatedBytes();
         } else {
-            this.minTickDurationMillis = Double.MAX_VALUE;
-            double totalTickDurationMillis = 0;
-            this.maxTickDurationMillis = 0;
-            synchronized (tickInterval.getTicks()) {
-                for (ListIterator<Tick> it = ticks.listIterator(totalTicks - this.tickCount); it.hasNext(); ) {
-                    Tick tick = it.next();
-                    this.minTickDurationMillis = Math.min(this.minTickDurationMillis, tick.getTickDuration());
-                    totalTickDurationMillis += tick.getTickDuration();
-                    this.maxTickDurationMillis = Math.max(this.maxTickDurationMillis, tick.getTickDuration());
-                }
-            }
-            this.avgTickDurationMillis = totalTickDurationMillis / this.tickCount;
-            this.stdevTickDurationMillis = 0;
-            synchronized (tickInterval.getTicks()) {
-                for (ListIterator<Tick> it = ticks.listIterator(totalTicks - this.tickCount); it.hasNext(); ) {
-                    this.stdevTickDurationMillis += Math.pow(it.next().getTickDuration() -
-                            this.avgTickDurationMillis, 2);
-                }
-            }
-            this.stdevTickDurationMillis /= this.tickCount;
-            this.stdevTickDurationMillis = Math.sqrt(this.stdevTickDurationMillis);
+            long toSequence = history.getTotalTickCount();
+            long fromSequence = toSequence - this.tickCount;
+            TickHistogram histogram = new TickHistogram();
+            this.minTickDurationMillis = history.getMinTickDuration(fromSequence, toSequence);
+            this.maxTickDurationMillis = history.getMaxTickDuration(fromSequence, toSequence);
+            double sumOfTickDurations = history.getSumOfTickDurations(fromSequence, toSequence);
+            double sumOfSquaredTickDurations = history.getSumOfSquaredTickDurations(fromSequence, toSequence);
+            this.avgTickDurationMillis = sumOfTickDurations / this.tickCount;
+            double variance = sumOfSquaredTickDurations / this.tickCount - Math.pow(this.avgTickDurationMillis, 2);
+            // The variance will never be zero, except for when rare rounding errors occur
+            this.stdevTickDurationMillis = variance < 0 ? 0 : Math.sqrt(variance);
+            history.getTickDurationHistogram(fromSequence, histogram);
+            this.p50TickDurationMillis = this.clampTickDuration(histogram.getValueAtPercentile(50));
+            this.p90TickDurationMillis = this.clampTickDuration(histogram.getValueAtPercentile(90));
+            this.p99TickDurationMillis = this.clampTickDuration(histogram.getValueAtPercentile(99));
+            this.p999TickDurationMillis = this.clampTickDuration(histogram.getValueAtPercentile(99.9));
+            this.gcTimeMillis = history.getSumOfGcTimes(fromSequence, toSequence);
+            this.gcCount = history.getSumOfGcCounts(fromSequence, toSequence);
+            this.allocatedBytes = history.getSumOfAllocatedBytes(fromSequence, toSequence);
         }
         // Calculate the TPS
         this.tps = this.tickIntervals / this.tickingDuration;
+        // Calculate the garbage collection share and allocation rate, which include what was accrued by the first tick
+        this.gcShare = this.tickingDurationMillis > 0 ?
+                Math.min(1, this.gcTimeMillis / this.tickingDurationMillis) : 0;
+        this.allocationRate = this.tickingDuration > 0 ? this.allocatedBytes / this.tickingDuration : 0;
         // Fetch obvious information
         this.name = tickInterval.getName() == null ?
                 String.format("%.2f seconds", this.tickingDuration) : tickInterval.getName();
@@ -131,4 +160,14 @@ public class Result {
         this.isValid = true;
     }
 
+    /**
+     * Limits a tick duration read from a histogram to the exact minimum and maximum tick durations.
+     *
+     * @param tickDuration The tick duration.
+     * @return The clamped tick duration.
+     */
+    private double clampTickDuration(double tickDuration) {
+        return Math.min(this.maxTickDurationMillis, Math.max(this.minTickDurationMillis, tickDuration));
+    }
+
 }
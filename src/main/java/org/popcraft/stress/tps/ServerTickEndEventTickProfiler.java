@@ -16,8 +16,7 @@ public class ServerTickEndEventTickProfiler extends TickProfiler implements List
 
     @EventHandler
     public void onServerTickEnd(ServerTickEndEvent event) {
-        this.update(new Tick(event.getTickNumber(), System.nanoTime(), event.getTickDuration(),
-                event.getTimeRemaining()));
+        this.update(event.getTickNumber(), System.nanoTime(), event.getTickDuration(), event.getTimeRemaining());
     }
 
     @Override
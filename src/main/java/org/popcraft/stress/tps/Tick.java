@@ -2,21 +2,37 @@ package org.popcraft.stress.tps;
 
 public class Tick {
 
+    // Only used to number ticks created without a tick number
     private static int currentTickNumber = 1;
     private int tickNumber;
     private double tickTime;
     private double tickLength;
     private double tickDuration;
     private double tickSleepDuration;
+    private double gcTime;
+    private int gcCount;
+    private long allocatedBytes;
 
     /**
-     * Creates a tick object based on a time measurement between the current and last tick.
+     * Creates a tick object based on a time measurement between the current and last tick, numbered after the last
+     * tick created this way.
      *
      * @param tickTime     The time in nanoseconds of the current tick.
      * @param lastTickTime The time in nanoseconds of the last tick.
      */
     public Tick(long tickTime, long lastTickTime) {
-        this.tickNumber = currentTickNumber++;
+        this(currentTickNumber++, tickTime, lastTickTime);
+    }
+
+    /**
+     * Creates a tick object based on a time measurement between the current and last tick.
+     *
+     * @param tickNumber   The tick number.
+     * @param tickTime     The time in nanoseconds of the current tick.
+     * @param lastTickTime The time in nanoseconds of the last tick.
+     */
+    public Tick(int tickNumber, long tickTime, long lastTickTime) {
+        this.tickNumber = tickNumber;
         this.tickTime = tickTime / 1e6d;
         this.tickLength = (tickTime - lastTickTime) / 1e6d;
     }
@@ -37,6 +53,30 @@ public class Tick {
         this.tickLength = tickSleepDuration < 0 ? this.tickDuration : this.tickDuration + this.tickSleepDuration;
     }
 
+    /**
+     * Creates a tick object from previously recorded tick information.
+     *
+     * @param tickNumber        The tick number.
+     * @param tickTime          The time in milliseconds of the tick.
+     * @param tickLength        The tick length in milliseconds.
+     * @param tickDuration      The tick duration in milliseconds.
+     * @param tickSleepDuration The tick sleep duration in milliseconds.
+     * @param gcTime            The garbage collection pause time in milliseconds accrued during the tick.
+     * @param gcCount           The number of garbage collections during the tick.
+     * @param allocatedBytes    The bytes allocated by the main thread during the tick.
+     */
+    Tick(int tickNumber, double tickTime, double tickLength, double tickDuration, double tickSleepDuration,
+         double gcTime, int gcCount, long allocatedBytes) {
+        this.tickNumber = tickNumber;
+        this.tickTime = tickTime;
+        this.tickLength = tickLength;
+        this.tickDuration = tickDuration;
+        this.tickSleepDuration = tickSleepDuration;
+        this.gcTime = gcTime;
+        this.gcCount = gcCount;
+        this.allocatedBytes = allocatedBytes;
+    }
+
     /**
      * Copy constructor.
      *
@@ -48,6 +88,9 @@ public class Tick {
         this.tickLength = other.tickLength;
         this.tickDuration = other.tickDuration;
         this.tickSleepDuration = other.tickSleepDuration;
+        this.gcTime = other.gcTime;
+        this.gcCount = other.gcCount;
+        this.allocatedBytes = other.allocatedBytes;
     }
 
     /**
@@ -100,4 +143,32 @@ public class Tick {
         return tickSleepDuration;
     }
 
+    /**
+     * Gets the time spent paused for garbage collection since the previous tick. This information is only available
+     * for ticks recorded by the running server, and is zero otherwise.
+     *
+     * @return The garbage collection time in milliseconds.
+     */
+    public double getGcTime() {
+        return gcTime;
+    }
+
+    /**
+     * Gets the number of garbage collections since the previous tick.
+     *
+     * @return The garbage collection count.
+     */
+    public int getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the main thread since the previous tick.
+     *
+     * @return The allocated bytes.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
 }
@@ -0,0 +1,127 @@
+package org.popcraft.stress.tps;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+public class TickBaselines {
+
+    private static final String EXTENSION = ".ticks";
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_.-]{1,64}");
+
+    private final File directory;
+    private final Logger logger;
+
+    /**
+     * Create a store of named baselines, each of which holds every tick of a test run as a tick recording, so that
+     * later runs can be compared with it. Baselines can also be analyzed like any other recording.
+     *
+     * @param directory The directory to keep baselines in.
+     * @param logger    Logger for any errors writing baselines.
+     */
+    public TickBaselines(File directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    /**
+     * Checks whether a baseline name is allowed, which keeps names safe to use as file names.
+     *
+     * @param name The baseline name.
+     * @return True if the name is allowed.
+     */
+    public static boolean isValidName(String name) {
+        return name != null && NAME_PATTERN.matcher(name).matches() && !name.startsWith(".");
+    }
+
+    /**
+     * Checks whether a baseline exists.
+     *
+     * @param name The baseline name.
+     * @return True if the baseline exists.
+     */
+    public boolean exists(String name) {
+        return isValidName(name) && this.getFile(name).isFile();
+    }
+
+    /**
+     * Gets the names of every saved baseline.
+     *
+     * @return The baseline names, sorted.
+     */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>();
+        File[] files = this.directory.listFiles((dir, fileName) -> fileName.endsWith(EXTENSION));
+        if (files != null) {
+            for (File file : files) {
+                names.add(file.getName().substring(0, file.getName().length() - EXTENSION.length()));
+            }
+        }
+        names.sort(null);
+        return names;
+    }
+
+    /**
+     * Saves ticks as a baseline, replacing any baseline with the same name.
+     *
+     * @param name  The baseline name.
+     * @param ticks The ticks to save.
+     * @throws IOException If the baseline could not be written.
+     */
+    public void save(String name, List<Tick> ticks) throws IOException {
+        if (!isValidName(name)) {
+            throw new IOException("Invalid baseline name: " + name);
+        }
+        File file = this.getFile(name);
+        File temporaryFile = new File(this.directory, name + EXTENSION + ".tmp");
+        try (TickRecordingWriter writer = new TickRecordingWriter(temporaryFile, this.logger)) {
+            for (Tick tick : ticks) {
+                writer.onTick(tick.getTickNumber(), tick.getTickTime(), tick.getTickLength(), tick.getTickDuration(),
+                        tick.getTickSleepDuration());
+            }
+        }
+        // Replace the baseline in one step, so that it is never missing or half written if the server stops
+        try {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Loads the tick durations of a baseline.
+     *
+     * @param name The baseline name.
+     * @return The tick durations in milliseconds.
+     * @throws IOException If the baseline does not exist or could not be read.
+     */
+    public double[] load(String name) throws IOException {
+        if (!this.exists(name)) {
+            throw new IOException("No baseline named " + name);
+        }
+        double[][] tickDurations = {new double[1024]};
+        int[] tickCount = new int[1];
+        try (TickRecordingReader reader = new TickRecordingReader(this.getFile(name))) {
+            reader.read((tickNumber, tickTime, tickLength, tickDuration, tickSleepDuration) -> {
+                if (tickCount[0] == tickDurations[0].length) {
+                    tickDurations[0] = Arrays.copyOf(tickDurations[0], tickCount[0] * 2);
+                }
+                tickDurations[0][tickCount[0]++] = tickDuration;
+            });
+        }
+        return Arrays.copyOf(tickDurations[0], tickCount[0]);
+    }
+
+    private File getFile(String name) {
+        return new File(this.directory, name + EXTENSION);
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.popcraft.stress.tps;
+
+import java.util.Arrays;
+
+public class TickComparison {
+
+    // Differences less likely than this to happen by chance are significant
+    private static final double SIGNIFICANCE = 0.01;
+    // With tens of thousands of ticks, differences far too small to matter are still significant, so a difference
+    // must also have at least a small effect size, which is a probability of 0.56 that one tick is slower than another
+    private static final double MIN_EFFECT = 0.06;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    public enum Verdict {
+        REGRESSED,
+        IMPROVED,
+        NO_SIGNIFICANT_CHANGE
+    }
+
+    private final int baselineTickCount, currentTickCount;
+    private final double baselineAverage, currentAverage;
+    private final double[] baselinePercentiles = new double[PERCENTILES.length];
+    private final double[] currentPercentiles = new double[PERCENTILES.length];
+    private final double u, z, pValue, slowerProbability;
+    private final Verdict verdict;
+
+    /**
+     * Compares the tick durations of a run with a baseline, using a Mann-Whitney U test. This makes no assumption
+     * about how tick durations are distributed, which is rarely normal, and is not thrown off by a few lag spikes.
+     *
+     * @param baseline The tick durations of the baseline in milliseconds.
+     * @param current  The tick durations of the current run in milliseconds.
+     */
+    public TickComparison(double[] baseline, double[] current) {
+        if (baseline.length < 2 || current.length < 2) {
+            throw new IllegalArgumentException("At least two ticks are needed on each side to compare");
+        }
+        double[] sortedBaseline = baseline.clone();
+        double[] sortedCurrent = current.clone();
+        Arrays.sort(sortedBaseline);
+        Arrays.sort(sortedCurrent);
+        this.baselineTickCount = sortedBaseline.length;
+        this.currentTickCount = sortedCurrent.length;
+        this.baselineAverage = Arrays.stream(sortedBaseline).sum() / this.baselineTickCount;
+        this.currentAverage = Arrays.stream(sortedCurrent).sum() / this.currentTickCount;
+        for (int i = 0; i < PERCENTILES.length; ++i) {
+            this.baselinePercentiles[i] = percentile(sortedBaseline, PERCENTILES[i]);
+            this.currentPercentiles[i] = percentile(sortedCurrent, PERCENTILES[i]);
+        }
+        // Rank both runs together by merging them, giving tied ticks the average of their ranks
+        double currentRankSum = 0, tieCorrection = 0;
+        long position = 1;
+        int b = 0, c = 0;
+        while (b < sortedBaseline.length || c < sortedCurrent.length) {
+            double value = c == sortedCurrent.length || (b < sortedBaseline.length &&
+                    sortedBaseline[b] < sortedCurrent[c]) ? sortedBaseline[b] : sortedCurrent[c];
+            int baselineTies = 0, currentTies = 0;
+            while (b < sortedBaseline.length && sortedBaseline[b] == value) {
+                ++b;
+                ++baselineTies;
+            }
+            while (c < sortedCurrent.length && sortedCurrent[c] == value) {
+                ++c;
+                ++currentTies;
+            }
+            double ties = baselineTies + currentTies;
+            currentRankSum += currentTies * (position + (ties - 1) / 2);
+            tieCorrection += ties * ties * ties - ties;
+            position += baselineTies + currentTies;
+        }
+        double n1 = this.currentTickCount, n2 = this.baselineTickCount, n = n1 + n2;
+        this.u = currentRankSum - n1 * (n1 + 1) / 2;
+        this.slowerProbability = this.u / (n1 * n2);
+        // The normal approximation is accurate for the number of ticks in any test, with a correction for ties
+        double mean = n1 * n2 / 2;
+        double variance = n1 * n2 / 12 * ((n + 1) - tieCorrection / (n * (n - 1)));
+        double difference = Math.max(0, Math.abs(this.u - mean) - 0.5);
+        this.z = variance > 0 ? Math.signum(this.u - mean) * difference / Math.sqrt(variance) : 0;
+        this.pValue = Math.min(1, erfc(Math.abs(this.z) / Math.sqrt(2)));
+        if (this.pValue < SIGNIFICANCE && Math.abs(this.slowerProbability - 0.5) >= MIN_EFFECT) {
+            this.verdict = this.slowerProbability > 0.5 ? Verdict.REGRESSED : Verdict.IMPROVED;
+        } else {
+            this.verdict = Verdict.NO_SIGNIFICANT_CHANGE;
+        }
+    }
+
+    /**
+     * Gets the value at a percentile of sorted values, using the nearest rank.
+     *
+     * @param sorted     The sorted values.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The value at the percentile.
+     */
+    private static double percentile(double[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    /**
+     * Complementary error function, with a fractional error of less than 1.2e-7.
+     *
+     * @param x The value.
+     * @return The complementary error function of the value.
+     */
+    private static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1 / (1 + 0.5 * z);
+        double r = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418 +
+                t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 + t * (-0.82215223 +
+                t * 0.17087277)))))))));
+        return x >= 0 ? r : 2 - r;
+    }
+
+    /**
+     * Gets the percentiles which are compared.
+     *
+     * @return The percentiles, from 0 to 100.
+     */
+    public static double[] getPercentiles() {
+        return PERCENTILES.clone();
+    }
+
+    public int getBaselineTickCount() {
+        return this.baselineTickCount;
+    }
+
+    public int getCurrentTickCount() {
+        return this.currentTickCount;
+    }
+
+    /**
+     * Gets the difference between the average tick durations, which is positive if the current run is slower.
+     *
+     * @return The average tick duration delta in milliseconds.
+     */
+    public double getAverageDelta() {
+        return this.currentAverage - this.baselineAverage;
+    }
+
+    /**
+     * Gets the difference between a percentile of the tick durations, which is positive if the current run is
+     * slower.
+     *
+     * @param index The index of the percentile in {@link #getPercentiles()}.
+     * @return The tick duration delta in milliseconds.
+     */
+    public double getPercentileDelta(int index) {
+        return this.currentPercentiles[index] - this.baselinePercentiles[index];
+    }
+
+    /**
+     * Gets the Mann-Whitney U statistic of the current run.
+     *
+     * @return The U statistic.
+     */
+    public double getU() {
+        return this.u;
+    }
+
+    /**
+     * Gets the standard score of the U statistic, which is positive if the current run is slower.
+     *
+     * @return The z score.
+     */
+    public double getZ() {
+        return this.z;
+    }
+
+    /**
+     * Gets the two-sided probability of a difference at least this large if both runs performed the same.
+     *
+     * @return The p-value.
+     */
+    public double getPValue() {
+        return this.pValue;
+    }
+
+    /**
+     * Gets the probability that a tick from the current run is slower than a tick from the baseline, counting ties
+     * as half. This is 0.5 if neither run is slower.
+     *
+     * @return The probability, from 0 to 1.
+     */
+    public double getSlowerProbability() {
+        return this.slowerProbability;
+    }
+
+    public Verdict getVerdict() {
+        return this.verdict;
+    }
+
+}
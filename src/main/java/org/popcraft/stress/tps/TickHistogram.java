@@ -0,0 +1,177 @@
+package org.popcraft.stress.tps;
+
+import java.util.Arrays;
+
+public class TickHistogram {
+
+    // Each power of two is split into this many buckets, for a relative error of less than one percent
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Values are recorded in microseconds, up to about 9.5 hours
+    private static final int MAX_VALUE_BITS = 35;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final long[] counts;
+    private long totalCount;
+
+    /**
+     * Create a new histogram of tick durations. Buckets are logarithmic, so the memory used is fixed no matter how
+     * many ticks are recorded, and percentiles can be read without sorting any ticks.
+     */
+    public TickHistogram() {
+        this.counts = new long[BUCKET_COUNT];
+    }
+
+    /**
+     * Records a tick duration.
+     *
+     * @param tickDuration The tick duration in milliseconds.
+     */
+    public void add(double tickDuration) {
+        ++this.counts[bucketOf(tickDuration)];
+        ++this.totalCount;
+    }
+
+    /**
+     * Removes a previously recorded tick duration.
+     *
+     * @param tickDuration The tick duration in milliseconds.
+     */
+    public void remove(double tickDuration) {
+        --this.counts[bucketOf(tickDuration)];
+        --this.totalCount;
+    }
+
+    /**
+     * Adds all tick durations recorded by another histogram to this one.
+     *
+     * @param other The other histogram.
+     */
+    public void add(TickHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            this.counts[i] += other.counts[i];
+        }
+        this.totalCount += other.totalCount;
+    }
+
+    /**
+     * Removes all tick durations recorded by another histogram from this one.
+     *
+     * @param other The other histogram, which must only contain tick durations also recorded by this one.
+     */
+    public void remove(TickHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            this.counts[i] -= other.counts[i];
+        }
+        this.totalCount -= other.totalCount;
+    }
+
+    /**
+     * Replaces all recorded tick durations with those recorded by another histogram.
+     *
+     * @param other The other histogram.
+     */
+    public void set(TickHistogram other) {
+        System.arraycopy(other.counts, 0, this.counts, 0, BUCKET_COUNT);
+        this.totalCount = other.totalCount;
+    }
+
+    /**
+     * Removes all recorded tick durations.
+     */
+    public void clear() {
+        Arrays.fill(this.counts, 0);
+        this.totalCount = 0;
+    }
+
+    /**
+     * Gets the number of recorded tick durations.
+     *
+     * @return The total count.
+     */
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    /**
+     * Gets the tick duration at a given percentile.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The tick duration in milliseconds, or zero if nothing was recorded.
+     */
+    public double getValueAtPercentile(double percentile) {
+        if (this.totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100d * this.totalCount));
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            count += this.counts[i];
+            if (count >= rank) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Gets the number of recorded tick durations which are less than or equal to a value, to the precision of the
+     * histogram buckets.
+     *
+     * @param tickDuration The tick duration in milliseconds.
+     * @return The number of tick durations at or below the value.
+     */
+    public long getCountAtOrBelow(double tickDuration) {
+        int bucket = bucketOf(tickDuration);
+        long count = 0;
+        for (int i = 0; i <= bucket; ++i) {
+            count += this.counts[i];
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of buckets used by every histogram.
+     *
+     * @return The bucket count.
+     */
+    public static int getBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * Gets the number of recorded tick durations in a bucket.
+     *
+     * @param bucket The bucket index.
+     * @return The bucket count.
+     */
+    public long getCount(int bucket) {
+        return this.counts[bucket];
+    }
+
+    /**
+     * Gets the bucket that a tick duration is recorded in.
+     *
+     * @param tickDuration The tick duration in milliseconds.
+     * @return The bucket index.
+     */
+    public static int bucketOf(double tickDuration) {
+        long value = Math.min(MAX_VALUE, Math.max(0, (long) (tickDuration * 1e3d)));
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * Gets a representative tick duration for a bucket, which is the middle of the range of values it records.
+     *
+     * @param bucket The bucket index.
+     * @return The tick duration in milliseconds.
+     */
+    public static double valueOf(int bucket) {
+        int shift = Math.max(0, (bucket >> SUB_BUCKET_BITS) - 1);
+        long lowestValue = (long) (bucket - (shift << SUB_BUCKET_BITS)) << shift;
+        return (lowestValue + ((1L << shift) - 1) / 2d) / 1e3d;
+    }
+
+}
@@ -0,0 +1,438 @@
+package org.popcraft.stress.tps;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+public class TickHistory {
+
+    // A snapshot of the cumulative tick duration histogram is kept every this many ticks
+    private static final int HISTOGRAM_CHECKPOINT_TICKS = 1200;
+
+    private final int capacity, slots;
+    private final int[] tickNumbers;
+    private final double[] tickTimes;
+    private final double[] tickLengths;
+    private final double[] tickDurations;
+    private final double[] tickSleepDurations;
+    private final double[] gcTimes;
+    private final int[] gcCounts;
+    private final long[] allocatedBytes;
+    // Cumulative sums of all tick durations up to and including each tick
+    private final double[] cumulativeTickDurations;
+    private final double[] cumulativeSquaredTickDurations;
+    private final double[] cumulativeGcTimes;
+    private final long[] cumulativeGcCounts;
+    private final long[] cumulativeAllocatedBytes;
+    private final MinMaxTree tickDurationTree;
+    private final TickHistogram cumulativeHistogram;
+    private final TickHistogram[] histogramCheckpoints;
+    private volatile long totalTickCount;
+    // Only the main thread writes, and readers never take the lock, so a tick never waits for a reader
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Create a new tick history, which stores the most recent ticks in a fixed size ring of primitive columns. This
+     * is shared by all tick intervals, which act as windows over the most recent part of the history.
+     *
+     * @param capacity The maximum number of ticks to keep, which should be at least the longest tick interval.
+     */
+    public TickHistory(int capacity) {
+        this.capacity = Math.max(2, capacity);
+        // One extra slot is kept, so that a full tick interval can still read the tick it is about to remove
+        this.slots = this.capacity + 1;
+        this.tickNumbers = new int[this.slots];
+        this.tickTimes = new double[this.slots];
+        this.tickLengths = new double[this.slots];
+        this.tickDurations = new double[this.slots];
+        this.tickSleepDurations = new double[this.slots];
+        this.gcTimes = new double[this.slots];
+        this.gcCounts = new int[this.slots];
+        this.allocatedBytes = new long[this.slots];
+        this.cumulativeTickDurations = new double[this.slots];
+        this.cumulativeSquaredTickDurations = new double[this.slots];
+        this.cumulativeGcTimes = new double[this.slots];
+        this.cumulativeGcCounts = new long[this.slots];
+        this.cumulativeAllocatedBytes = new long[this.slots];
+        this.tickDurationTree = new MinMaxTree(this.slots);
+        this.cumulativeHistogram = new TickHistogram();
+        this.histogramCheckpoints = new TickHistogram[this.capacity / HISTOGRAM_CHECKPOINT_TICKS + 2];
+        for (int i = 0; i < this.histogramCheckpoints.length; ++i) {
+            this.histogramCheckpoints[i] = new TickHistogram();
+        }
+    }
+
+    /**
+     * Records a new tick, overwriting the oldest tick if the history is full.
+     *
+     * @param tick The tick to add.
+     */
+    public void addTick(Tick tick) {
+        this.addTick(tick.getTickNumber(), tick.getTickTime(), tick.getTickLength(), tick.getTickDuration(),
+                tick.getTickSleepDuration(), tick.getGcTime(), tick.getGcCount(), tick.getAllocatedBytes());
+    }
+
+    /**
+     * Records a new tick without garbage collection or allocation information, overwriting the oldest tick if the
+     * history is full. This does not allocate.
+     *
+     * @param tickNumber        The tick number.
+     * @param tickTime          The time in milliseconds of the tick.
+     * @param tickLength        The tick length in milliseconds.
+     * @param tickDuration      The tick duration in milliseconds.
+     * @param tickSleepDuration The tick sleep duration in milliseconds.
+     */
+    public void addTick(int tickNumber, double tickTime, double tickLength, double tickDuration,
+                        double tickSleepDuration) {
+        this.addTick(tickNumber, tickTime, tickLength, tickDuration, tickSleepDuration, 0d, 0, 0L);
+    }
+
+    /**
+     * Records a new tick, overwriting the oldest tick if the history is full. This does not allocate.
+     *
+     * @param tickNumber        The tick number.
+     * @param tickTime          The time in milliseconds of the tick.
+     * @param tickLength        The tick length in milliseconds.
+     * @param tickDuration      The tick duration in milliseconds.
+     * @param tickSleepDuration The tick sleep duration in milliseconds.
+     * @param gcTime            The garbage collection pause time in milliseconds accrued during the tick.
+     * @param gcCount           The number of garbage collections during the tick.
+     * @param allocatedBytes    The bytes allocated by the main thread during the tick.
+     */
+    public void addTick(int tickNumber, double tickTime, double tickLength, double tickDuration,
+                        double tickSleepDuration, double gcTime, int gcCount, long allocatedBytes) {
+        int index = this.indexOf(this.totalTickCount);
+        this.tickNumbers[index] = tickNumber;
+        this.tickTimes[index] = tickTime;
+        this.tickLengths[index] = tickLength;
+        this.tickDurations[index] = tickDuration;
+        this.tickSleepDurations[index] = tickSleepDuration;
+        this.gcTimes[index] = gcTime;
+        this.gcCounts[index] = gcCount;
+        this.allocatedBytes[index] = allocatedBytes;
+        int lastIndex = this.indexOf(this.totalTickCount - 1);
+        boolean first = this.totalTickCount == 0;
+        this.cumulativeTickDurations[index] = (first ? 0 : this.cumulativeTickDurations[lastIndex]) + tickDuration;
+        this.cumulativeSquaredTickDurations[index] = (first ? 0 : this.cumulativeSquaredTickDurations[lastIndex]) +
+                tickDuration * tickDuration;
+        this.cumulativeGcTimes[index] = (first ? 0 : this.cumulativeGcTimes[lastIndex]) + gcTime;
+        this.cumulativeGcCounts[index] = (first ? 0 : this.cumulativeGcCounts[lastIndex]) + gcCount;
+        this.cumulativeAllocatedBytes[index] = (first ? 0 : this.cumulativeAllocatedBytes[lastIndex]) +
+                allocatedBytes;
+        this.tickDurationTree.set(index, tickDuration);
+        this.cumulativeHistogram.add(tickDuration);
+        if (++this.totalTickCount % HISTOGRAM_CHECKPOINT_TICKS == 0) {
+            this.histogramCheckpoints[this.checkpointIndexOf(this.totalTickCount)].set(this.cumulativeHistogram);
+        }
+    }
+
+    /**
+     * Starts writing to this history and the tick intervals over it. There must only be one writing thread, and it
+     * never waits, because readers do not take the lock.
+     *
+     * @return The stamp to end writing with.
+     */
+    public long beginWrite() {
+        return this.lock.writeLock();
+    }
+
+    /**
+     * Finishes writing to this history, which makes readers that overlapped with the write try again.
+     *
+     * @param stamp The stamp returned by {@link #beginWrite()}.
+     */
+    public void endWrite(long stamp) {
+        this.lock.unlockWrite(stamp);
+    }
+
+    /**
+     * Reads from this history and the tick intervals over it without blocking the writer. The reader is run again
+     * until it has seen a consistent state, so it should not have side effects other than on its own result.
+     *
+     * @param reader The reader.
+     * @param <T>    The type of the result.
+     * @return The result of the reader.
+     */
+    public <T> T read(Supplier<T> reader) {
+        while (true) {
+            long stamp = this.lock.tryOptimisticRead();
+            if (stamp != 0) {
+                T result;
+                try {
+                    result = reader.get();
+                } catch (RuntimeException e) {
+                    // Reading while a tick is written can produce nonsense, which is only a problem if nothing changed
+                    if (this.lock.validate(stamp)) {
+                        throw e;
+                    }
+                    continue;
+                }
+                if (this.lock.validate(stamp)) {
+                    return result;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Reads from this history and the tick intervals over it without blocking the writer.
+     *
+     * @param reader The reader.
+     * @see #read(Supplier)
+     */
+    public void read(Runnable reader) {
+        this.read(() -> {
+            reader.run();
+            return null;
+        });
+    }
+
+    /**
+     * Gets the maximum number of ticks which can be kept by this history.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Gets the number of ticks currently available in this history.
+     *
+     * @return The current tick count.
+     */
+    public int getTickCount() {
+        return (int) Math.min(this.totalTickCount, this.capacity);
+    }
+
+    /**
+     * Gets the number of ticks which have ever been recorded. This is also the sequence number of the next tick.
+     *
+     * @return The total tick count.
+     */
+    public long getTotalTickCount() {
+        return this.totalTickCount;
+    }
+
+    /**
+     * Checks whether a tick with the given sequence number is still available.
+     *
+     * @param sequence The sequence number of the tick.
+     * @return True if the tick has not yet been overwritten.
+     */
+    public boolean contains(long sequence) {
+        return sequence >= 0 && sequence < this.totalTickCount && sequence >= this.totalTickCount - this.capacity;
+    }
+
+    /**
+     * Gets the tick number of a tick.
+     *
+     * @param sequence The sequence number of the tick.
+     * @return The tick number.
+     */
+    public int getTickNumber(long sequence) {
+        return this.tickNumbers[this.indexOf(sequence)];
+    }
+
+    /**
+     * Gets the time in milliseconds at which a tick was recorded.
+     *
+     * @param sequence The sequence number of the tick.
+     * @return The tick time.
+     */
+    public double getTickTime(long sequence) {
+        return this.tickTimes[this.indexOf(sequence)];
+    }
+
+    /**
+     * Gets the duration in milliseconds of a tick.
+     *
+     * @param sequence The sequence number of the tick.
+     * @return The tick duration.
+     */
+    public double getTickDuration(long sequence) {
+        return this.tickDurations[this.indexOf(sequence)];
+    }
+
+    /**
+     * Gets the garbage collection pause time in milliseconds accrued during a tick.
+     *
+     * @param sequence The sequence number of the tick.
+     * @return The garbage collection time.
+     */
+    public double getGcTime(long sequence) {
+        return this.gcTimes[this.indexOf(sequence)];
+    }
+
+    /**
+     * Gets the number of garbage collections during a tick.
+     *
+     * @param sequence The sequence number of the tick.
+     * @return The garbage collection count.
+     */
+    public int getGcCount(long sequence) {
+        return this.gcCounts[this.indexOf(sequence)];
+    }
+
+    /**
+     * Gets the number of bytes allocated by the main thread during a tick.
+     *
+     * @param sequence The sequence number of the tick.
+     * @return The allocated bytes.
+     */
+    public long getAllocatedBytes(long sequence) {
+        return this.allocatedBytes[this.indexOf(sequence)];
+    }
+
+    /**
+     * Creates a tick object from the stored information about a tick.
+     *
+     * @param sequence The sequence number of the tick.
+     * @return A new tick.
+     */
+    public Tick getTick(long sequence) {
+        int index = this.indexOf(sequence);
+        return new Tick(this.tickNumbers[index], this.tickTimes[index], this.tickLengths[index],
+                this.tickDurations[index], this.tickSleepDurations[index], this.gcTimes[index], this.gcCounts[index],
+                this.allocatedBytes[index]);
+    }
+
+    /**
+     * Gets the sum of tick durations in a range of ticks.
+     *
+     * @param fromSequence The sequence number of the first tick, inclusive.
+     * @param toSequence   The sequence number of the last tick, exclusive.
+     * @return The sum of tick durations.
+     */
+    public double getSumOfTickDurations(long fromSequence, long toSequence) {
+        return this.cumulativeSumOf(this.cumulativeTickDurations, toSequence) -
+                this.cumulativeSumOf(this.cumulativeTickDurations, fromSequence);
+    }
+
+    /**
+     * Gets the sum of squared tick durations in a range of ticks.
+     *
+     * @param fromSequence The sequence number of the first tick, inclusive.
+     * @param toSequence   The sequence number of the last tick, exclusive.
+     * @return The sum of squared tick durations.
+     */
+    public double getSumOfSquaredTickDurations(long fromSequence, long toSequence) {
+        return this.cumulativeSumOf(this.cumulativeSquaredTickDurations, toSequence) -
+                this.cumulativeSumOf(this.cumulativeSquaredTickDurations, fromSequence);
+    }
+
+    /**
+     * Gets the sum of garbage collection pause times in a range of ticks.
+     *
+     * @param fromSequence The sequence number of the first tick, inclusive.
+     * @param toSequence   The sequence number of the last tick, exclusive.
+     * @return The sum of garbage collection times in milliseconds.
+     */
+    public double getSumOfGcTimes(long fromSequence, long toSequence) {
+        return this.cumulativeSumOf(this.cumulativeGcTimes, toSequence) -
+                this.cumulativeSumOf(this.cumulativeGcTimes, fromSequence);
+    }
+
+    /**
+     * Gets the number of garbage collections in a range of ticks.
+     *
+     * @param fromSequence The sequence number of the first tick, inclusive.
+     * @param toSequence   The sequence number of the last tick, exclusive.
+     * @return The garbage collection count.
+     */
+    public long getSumOfGcCounts(long fromSequence, long toSequence) {
+        return this.cumulativeSumOf(this.cumulativeGcCounts, toSequence) -
+                this.cumulativeSumOf(this.cumulativeGcCounts, fromSequence);
+    }
+
+    /**
+     * Gets the number of bytes allocated by the main thread in a range of ticks.
+     *
+     * @param fromSequence The sequence number of the first tick, inclusive.
+     * @param toSequence   The sequence number of the last tick, exclusive.
+     * @return The allocated bytes.
+     */
+    public long getSumOfAllocatedBytes(long fromSequence, long toSequence) {
+        return this.cumulativeSumOf(this.cumulativeAllocatedBytes, toSequence) -
+                this.cumulativeSumOf(this.cumulativeAllocatedBytes, fromSequence);
+    }
+
+    /**
+     * Gets the minimum tick duration in a range of ticks.
+     *
+     * @param fromSequence The sequence number of the first tick, inclusive.
+     * @param toSequence   The sequence number of the last tick, exclusive.
+     * @return The minimum tick duration.
+     */
+    public double getMinTickDuration(long fromSequence, long toSequence) {
+        int from = this.indexOf(fromSequence), to = this.indexOf(toSequence);
+        if (fromSequence >= toSequence) {
+            return Double.MAX_VALUE;
+        } else if (from < to) {
+            return this.tickDurationTree.min(from, to);
+        }
+        return Math.min(this.tickDurationTree.min(from, this.slots), this.tickDurationTree.min(0, to));
+    }
+
+    /**
+     * Gets the maximum tick duration in a range of ticks.
+     *
+     * @param fromSequence The sequence number of the first tick, inclusive.
+     * @param toSequence   The sequence number of the last tick, exclusive.
+     * @return The maximum tick duration.
+     */
+    public double getMaxTickDuration(long fromSequence, long toSequence) {
+        int from = this.indexOf(fromSequence), to = this.indexOf(toSequence);
+        if (fromSequence >= toSequence) {
+            return -Double.MAX_VALUE;
+        } else if (from < to) {
+            return this.tickDurationTree.max(from, to);
+        }
+        return Math.max(this.tickDurationTree.max(from, this.slots), this.tickDurationTree.max(0, to));
+    }
+
+    /**
+     * Fills a histogram with the tick durations of every tick from a given tick up to the most recent tick. Apart
+     * from a short range of ticks up to the next checkpoint, this is done by subtracting histograms.
+     *
+     * @param fromSequence The sequence number of the first tick, inclusive.
+     * @param histogram    The histogram to fill.
+     */
+    public void getTickDurationHistogram(long fromSequence, TickHistogram histogram) {
+        long checkpoint = (fromSequence + HISTOGRAM_CHECKPOINT_TICKS - 1) / HISTOGRAM_CHECKPOINT_TICKS *
+                HISTOGRAM_CHECKPOINT_TICKS;
+        long toSequence;
+        if (checkpoint > 0 && checkpoint < this.totalTickCount) {
+            histogram.set(this.cumulativeHistogram);
+            histogram.remove(this.histogramCheckpoints[this.checkpointIndexOf(checkpoint)]);
+            toSequence = checkpoint;
+        } else if (checkpoint == 0) {
+            histogram.set(this.cumulativeHistogram);
+            toSequence = fromSequence;
+        } else {
+            histogram.clear();
+            toSequence = this.totalTickCount;
+        }
+        for (long sequence = fromSequence; sequence < toSequence; ++sequence) {
+            histogram.add(this.getTickDuration(sequence));
+        }
+    }
+
+    private double cumulativeSumOf(double[] cumulativeSums, long sequence) {
+        // The cumulative sum before a tick is stored with the tick before it
+        return sequence <= 0 ? 0 : cumulativeSums[this.indexOf(sequence - 1)];
+    }
+
+    private long cumulativeSumOf(long[] cumulativeSums, long sequence) {
+        return sequence <= 0 ? 0 : cumulativeSums[this.indexOf(sequence - 1)];
+    }
+
+    private int checkpointIndexOf(long sequence) {
+        return (int) (sequence / HISTOGRAM_CHECKPOINT_TICKS % this.histogramCheckpoints.length);
+    }
+
+    private int indexOf(long sequence) {
+        return (int) (sequence % this.slots);
+    }
+
+}
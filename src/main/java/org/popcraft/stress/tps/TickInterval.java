@@ -1,72 +1,80 @@
 package org.popcraft.stress.tps;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 
 public class TickInterval {
 
     private String name, shortName;
-    private final LinkedList<Tick> ticks;
+    private final TickHistory history;
     private int maxTickCount, tickCount;
     private double sumOfTickDurations, sumOfSquaredTickDurations;
-    private Tick minTick, maxTick;
+    private double sumOfGcTimes;
+    private long sumOfGcCounts, sumOfAllocatedBytes;
+    private double firstTickTime;
+    private final MonotonicQueue minTicks, maxTicks;
+    private final TickHistogram histogram;
+    private volatile Result result;
     // Debug information
     private int findNewTickCount;
     private double totalFindNewTickMillis;
 
     /**
-     * Create a new tick interval with a given maximum tick count.
+     * Create a new tick interval with a given maximum tick count. Intervals which are not unbounded (tracking up to
+     * {@link Integer#MAX_VALUE} ticks) are limited to the capacity of the tick history.
      *
+     * @param history      The tick history that this tick interval is a window over.
      * @param maxTickCount The maximum tick count for this tick interval.
      */
-    public TickInterval(int maxTickCount) {
-        this.ticks = new LinkedList<>();
-        this.maxTickCount = maxTickCount;
+    public TickInterval(TickHistory history, int maxTickCount) {
+        this.history = history;
+        this.minTicks = new MonotonicQueue(true, 1);
+        this.maxTicks = new MonotonicQueue(false, 1);
+        this.histogram = new TickHistogram();
+        this.setMaxTickCount(maxTickCount);
     }
 
     /**
      * Create a new tick interval from a string.
      *
+     * @param history      The tick history that this tick interval is a window over.
      * @param timeInterval The time unit string.
      */
-    public TickInterval(String timeInterval) {
-        this(TpsUtil.timeIntervalToTicks(timeInterval));
+    public TickInterval(TickHistory history, String timeInterval) {
+        this(history, TpsUtil.timeIntervalToTicks(timeInterval));
         this.name = timeInterval;
         this.shortName = TpsUtil.shortIntervalName(timeInterval);
     }
 
     /**
-     * Records a new tick, possibly removing an old one at the same time.
-     *
-     * @param tick The tick to add.
+     * Records the newest tick from the tick history, possibly removing an old one at the same time.
      */
-    public void addTick(Tick tick) {
-        synchronized (this.ticks) {
-            this.ticks.addLast(tick);
-            this.sumOfTickDurations += tick.getTickDuration();
-            this.sumOfSquaredTickDurations += Math.pow(tick.getTickDuration(), 2);
-            ++this.tickCount;
-            if (this.minTick == null || tick.getTickDuration() <= this.minTick.getTickDuration()) {
-                this.minTick = tick;
-            }
-            if (this.maxTick == null || tick.getTickDuration() >= this.maxTick.getTickDuration()) {
-                this.maxTick = tick;
-            }
-            if (this.tickCount > maxTickCount) {
-                Tick removeTick = this.ticks.getFirst();
-                this.sumOfTickDurations -= removeTick.getTickDuration();
-                this.sumOfSquaredTickDurations -= Math.pow(removeTick.getTickDuration(), 2);
-                --this.tickCount;
-                this.ticks.removeFirst();
-                if (removeTick == minTick) {
-                    this.findNewMinTick();
-                }
-                if (removeTick == maxTick) {
-                    this.findNewMaxTick();
-                }
-            }
+    public void update() {
+        long sequence = this.history.getTotalTickCount() - 1;
+        double tickDuration = this.history.getTickDuration(sequence);
+        this.sumOfTickDurations += tickDuration;
+        this.sumOfSquaredTickDurations += Math.pow(tickDuration, 2);
+        this.sumOfGcTimes += this.history.getGcTime(sequence);
+        this.sumOfGcCounts += this.history.getGcCount(sequence);
+        this.sumOfAllocatedBytes += this.history.getAllocatedBytes(sequence);
+        if (++this.tickCount == 1) {
+            this.firstTickTime = this.history.getTickTime(sequence);
+        }
+        this.minTicks.add(sequence, tickDuration);
+        this.maxTicks.add(sequence, tickDuration);
+        this.histogram.add(tickDuration);
+        while (this.tickCount > maxTickCount && this.tickCount > 0) {
+            long removeSequence = sequence - this.tickCount + 1;
+            double removeTickDuration = this.history.getTickDuration(removeSequence);
+            this.sumOfTickDurations -= removeTickDuration;
+            this.sumOfSquaredTickDurations -= Math.pow(removeTickDuration, 2);
+            this.sumOfGcTimes -= this.history.getGcTime(removeSequence);
+            this.sumOfGcCounts -= this.history.getGcCount(removeSequence);
+            this.sumOfAllocatedBytes -= this.history.getAllocatedBytes(removeSequence);
+            this.histogram.remove(removeTickDuration);
+            --this.tickCount;
+            this.firstTickTime = this.history.getTickTime(removeSequence + 1);
+            this.removeExtremeTicks(removeSequence);
         }
     }
 
@@ -89,12 +97,45 @@ public class TickInterval {
     }
 
     /**
-     * Get the list of ticks from this tick interval.
+     * Gets the tick history that this tick interval is a window over.
+     *
+     * @return The tick history.
+     */
+    public TickHistory getHistory() {
+        return this.history;
+    }
+
+    /**
+     * Gets a tick from this tick interval.
+     *
+     * @param index The index of the tick, where zero is the oldest tick in this interval.
+     * @return A new tick.
+     */
+    public Tick getTick(int index) {
+        return this.history.getTick(this.getFirstTickSequence() + index);
+    }
+
+    /**
+     * Gets the time in milliseconds at which a tick from this tick interval was recorded.
+     *
+     * @param index The index of the tick, where zero is the oldest tick in this interval.
+     * @return The tick time.
+     */
+    public double getTickTime(int index) {
+        if (index == 0) {
+            return this.firstTickTime;
+        }
+        return this.history.getTickTime(this.getFirstTickSequence() + index);
+    }
+
+    /**
+     * Gets the duration in milliseconds of a tick from this tick interval.
      *
-     * @return The underlying tick list.
+     * @param index The index of the tick, where zero is the oldest tick in this interval.
+     * @return The tick duration.
      */
-    public LinkedList<Tick> getTicks() {
-        return this.ticks;
+    public double getTickDuration(int index) {
+        return this.history.getTickDuration(this.getFirstTickSequence() + index);
     }
 
     /**
@@ -104,18 +145,18 @@ public class TickInterval {
      * @return A new list containing the last few ticks.
      */
     public List<Tick> getLastTicks(int count) {
-        List<Tick> lastTicks = new ArrayList<>();
         if (count < 1) {
-            return lastTicks;
+            return new ArrayList<>();
         }
-        synchronized (this.ticks) {
-            for (ListIterator<Tick> it = ticks.listIterator(this.tickCount - Math.min(count, this.tickCount));
-                 it.hasNext(); ) {
-                Tick tick = it.next();
-                lastTicks.add(new Tick(tick));
+        return this.history.read(() -> {
+            int tickCount = this.tickCount;
+            int available = Math.min(tickCount, this.history.getTickCount());
+            List<Tick> lastTicks = new ArrayList<>();
+            for (int i = tickCount - Math.min(count, available); i < tickCount; ++i) {
+                lastTicks.add(this.getTick(i));
             }
-        }
-        return lastTicks;
+            return lastTicks;
+        });
     }
 
     /**
@@ -128,12 +169,21 @@ public class TickInterval {
     }
 
     /**
-     * Sets the maximum number of ticks recorded by this tick interval.
+     * Sets the maximum number of ticks recorded by this tick interval. Unless the interval is unbounded, this is
+     * limited to the capacity of the tick history.
      *
      * @param maxTickCount The new maximum tick count.
      */
     public void setMaxTickCount(int maxTickCount) {
-        this.maxTickCount = maxTickCount;
+        this.maxTickCount = maxTickCount == Integer.MAX_VALUE ? maxTickCount :
+                Math.min(maxTickCount, this.history.getCapacity());
+        // An unbounded interval never removes ticks, so only the current minimum and maximum need to be kept
+        if (this.maxTickCount != Integer.MAX_VALUE) {
+            this.minTicks.ensureCapacity(Math.max(this.maxTickCount, this.tickCount) + 1);
+            this.maxTicks.ensureCapacity(Math.max(this.maxTickCount, this.tickCount) + 1);
+        }
+        // The cached result is only replaced on the next tick, so it would still cover the old window until then
+        this.result = null;
     }
 
     /**
@@ -151,7 +201,7 @@ public class TickInterval {
      * @return Minimum tick duration.
      */
     public double getMinTickDuration() {
-        return this.minTick.getTickDuration();
+        return this.minTicks.peek();
     }
 
     /**
@@ -160,7 +210,7 @@ public class TickInterval {
      * @return Maximum tick duration.
      */
     public double getMaxTickDuration() {
-        return this.maxTick.getTickDuration();
+        return this.maxTicks.peek();
     }
 
     /**
@@ -186,7 +236,56 @@ public class TickInterval {
     }
 
     /**
-     * Debug method which returns the number of times that find new tick (min or max) ran.
+     * Gets a tick duration percentile from this interval, to the precision of the tick duration histogram.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return Tick duration at the percentile.
+     */
+    public double getTickDurationPercentile(double percentile) {
+        double tickDuration = this.histogram.getValueAtPercentile(percentile);
+        return Math.min(this.getMaxTickDuration(), Math.max(this.getMinTickDuration(), tickDuration));
+    }
+
+    /**
+     * Gets the total time spent paused for garbage collection during this interval.
+     *
+     * @return Garbage collection time in milliseconds.
+     */
+    public double getGcTime() {
+        // Subtracting removed ticks can leave a tiny negative remainder
+        return Math.max(0, this.sumOfGcTimes);
+    }
+
+    /**
+     * Gets the number of garbage collections during this interval.
+     *
+     * @return Garbage collection count.
+     */
+    public long getGcCount() {
+        return this.sumOfGcCounts;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the main thread during this interval.
+     *
+     * @return Allocated bytes.
+     */
+    public long getAllocatedBytes() {
+        return this.sumOfAllocatedBytes;
+    }
+
+    /**
+     * Gets the histogram of tick durations from this interval.
+     *
+     * @return The tick duration histogram.
+     */
+    public TickHistogram getHistogram() {
+        return this.histogram;
+    }
+
+    /**
+     * Debug method which returns the number of times that find new tick (min or max) ran, which happens whenever the
+     * minimum or maximum tick is removed from the interval.
      *
      * @return The number of times find new tick ran.
      */
@@ -204,48 +303,45 @@ public class TickInterval {
     }
 
     /**
-     * Aggregates data calculated from this tick interval, and returns it as an easy to use Result data object.
+     * Aggregates data calculated from this tick interval, and returns it as an easy to use Result data object. The
+     * result is calculated on the first call after each tick and then shared by every caller until the next tick, so
+     * it must not be modified.
      *
      * @return Calculated result from this tick interval.
      */
     public Result getResult() {
-        return new Result(this);
+        Result result = this.result;
+        if (result == null || result.totalTickCount != this.history.getTotalTickCount()) {
+            // Readers racing on a new tick may both calculate it, but the results are the same
+            result = new Result(this);
+            this.result = result;
+        }
+        return result;
     }
 
     /**
-     * Find a new minimum tick. Method assumes that the old minimum tick has already been removed.
+     * Gets the sequence number in the tick history of the oldest tick in this interval.
+     *
+     * @return The first tick sequence number.
      */
-    private void findNewMinTick() {
-        long startFindNewTickMillis = System.currentTimeMillis();
-        Tick newMinTick = this.ticks.get(0);
-        synchronized (this.ticks) {
-            for (Tick tick : this.ticks) {
-                if (tick.getTickDuration() <= newMinTick.getTickDuration()) {
-                    newMinTick = tick;
-                }
-            }
-        }
-        this.minTick = newMinTick;
-        this.totalFindNewTickMillis += System.currentTimeMillis() - startFindNewTickMillis;
-        ++this.findNewTickCount;
+    private long getFirstTickSequence() {
+        return this.history.getTotalTickCount() - this.tickCount;
     }
 
     /**
-     * Find a new maximum tick. Method assumes that the old maximum tick has already been removed.
+     * Removes a tick from the minimum and maximum tick queues. If it was the minimum or maximum tick, the next one is
+     * already known, so no search through the interval is needed.
+     *
+     * @param sequence The sequence number of the tick being removed.
      */
-    private void findNewMaxTick() {
-        long startFindNewTickMillis = System.currentTimeMillis();
-        Tick newMaxTick = this.ticks.get(0);
-        synchronized (this.ticks) {
-            for (Tick tick : this.ticks) {
-                if (tick.getTickDuration() >= newMaxTick.getTickDuration()) {
-                    newMaxTick = tick;
-                }
-            }
+    private void removeExtremeTicks(long sequence) {
+        long startFindNewTickNanos = System.nanoTime();
+        boolean removedMinTick = this.minTicks.remove(sequence);
+        boolean removedMaxTick = this.maxTicks.remove(sequence);
+        if (removedMinTick || removedMaxTick) {
+            this.totalFindNewTickMillis += (System.nanoTime() - startFindNewTickNanos) / 1e6d;
+            this.findNewTickCount += (removedMinTick ? 1 : 0) + (removedMaxTick ? 1 : 0);
         }
-        this.maxTick = newMaxTick;
-        this.totalFindNewTickMillis += System.currentTimeMillis() - startFindNewTickMillis;
-        ++this.findNewTickCount;
     }
 
 }
@@ -0,0 +1,17 @@
+package org.popcraft.stress.tps;
+
+public interface TickListener {
+
+    /**
+     * Called on the thread which records ticks, after a tick has been added to the tick history. Implementations
+     * should return quickly and should not allocate, as this runs on the main thread for every tick.
+     *
+     * @param tickNumber        The tick number.
+     * @param tickTime          The time in milliseconds of the tick, as measured by {@link System#nanoTime()}.
+     * @param tickLength        The tick length in milliseconds.
+     * @param tickDuration      The tick duration in milliseconds.
+     * @param tickSleepDuration The tick sleep duration in milliseconds.
+     */
+    void onTick(int tickNumber, double tickTime, double tickLength, double tickDuration, double tickSleepDuration);
+
+}
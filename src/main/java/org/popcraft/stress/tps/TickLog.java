@@ -0,0 +1,386 @@
+package org.popcraft.stress.tps;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class TickLog {
+
+    private static final int MAGIC = 0x5354524B;
+    private static final int VERSION = 1;
+    // Header: magic, version, record size, record count, creation time in epoch milliseconds, creation tick time
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_COUNT_OFFSET = 12;
+    // Record: tick time, tick length, tick duration, tick sleep duration, tick number, reserved
+    private static final int RECORD_SIZE = 40;
+    private static final String FILE_PREFIX = "ticks-", FILE_SUFFIX = ".bin";
+
+    private final File directory;
+    private final int maxRecordCount;
+    private final long rotateMillis, retentionMillis;
+    private final Logger logger;
+    // Files are created, flushed and deleted on this thread, so that the main thread only ever writes to memory
+    private final ExecutorService executor;
+    private volatile MappedByteBuffer nextSegment;
+    // Only used by the main thread
+    private MappedByteBuffer segment;
+    private int recordCount;
+    private double segmentEndTickTime;
+    // Only used by the tick log thread
+    private File file, nextFile;
+
+    /**
+     * Create a tick log, which appends every tick to fixed size records in memory mapped files, so that the tick
+     * history can outlive the server. Files are rotated when they are full or too old, and are deleted once they
+     * are older than the retention time. The next file is always created and mapped ahead of time on another thread,
+     * so that rotating only switches buffers, and the previous file is flushed and old files are deleted on that
+     * thread afterwards.
+     *
+     * @param directory       The directory to keep tick log files in.
+     * @param segmentBytes    The size of each file in bytes.
+     * @param rotateMillis    The maximum time in milliseconds that is written to a single file.
+     * @param retentionMillis The time in milliseconds to keep files for.
+     * @param logger          Logger for any errors writing the tick log.
+     */
+    public TickLog(File directory, long segmentBytes, long rotateMillis, long retentionMillis, Logger logger) {
+        this.directory = directory;
+        this.maxRecordCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE - HEADER_SIZE,
+                segmentBytes - HEADER_SIZE) / RECORD_SIZE);
+        this.rotateMillis = rotateMillis;
+        this.retentionMillis = retentionMillis;
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Stress Tick Log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.execute(this::prepare);
+    }
+
+    /**
+     * Appends a tick to the log. This only writes to memory. If the next file is not ready when the current one needs
+     * rotating, ticks go on in the current file while it has room, and are not logged after that.
+     *
+     * @param tickNumber        The tick number.
+     * @param tickTime          The time in milliseconds of the tick, as measured by {@link System#nanoTime()}.
+     * @param tickLength        The tick length in milliseconds.
+     * @param tickDuration      The tick duration in milliseconds.
+     * @param tickSleepDuration The tick sleep duration in milliseconds.
+     */
+    public void append(int tickNumber, double tickTime, double tickLength, double tickDuration,
+                       double tickSleepDuration) {
+        if (this.segment == null || this.recordCount >= this.maxRecordCount || tickTime >= this.segmentEndTickTime) {
+            if (!this.rotate(tickTime) && (this.segment == null || this.recordCount >= this.maxRecordCount)) {
+                return;
+            }
+        }
+        int position = HEADER_SIZE + this.recordCount * RECORD_SIZE;
+        this.segment.putDouble(position, tickTime);
+        this.segment.putDouble(position + 8, tickLength);
+        this.segment.putDouble(position + 16, tickDuration);
+        this.segment.putDouble(position + 24, tickSleepDuration);
+        this.segment.putInt(position + 32, tickNumber);
+        // The count is written last, so that readers never see a record which is not complete
+        this.segment.putInt(RECORD_COUNT_OFFSET, ++this.recordCount);
+    }
+
+    /**
+     * Switches to the file which was prepared ahead of time, then has the previous file flushed, old files deleted and
+     * the next file prepared on the tick log thread.
+     *
+     * @param tickTime The tick time of the first tick in the new file.
+     * @return True if a new file was started.
+     */
+    private boolean rotate(double tickTime) {
+        MappedByteBuffer nextSegment = this.nextSegment;
+        if (nextSegment == null) {
+            return false;
+        }
+        this.nextSegment = null;
+        // The tick time is only meaningful while the server is running, so keep what it was at a point in real time
+        nextSegment.putLong(16, System.currentTimeMillis());
+        nextSegment.putDouble(24, System.nanoTime() / 1e6d);
+        MappedByteBuffer lastSegment = this.segment;
+        this.segment = nextSegment;
+        this.recordCount = 0;
+        this.segmentEndTickTime = tickTime + this.rotateMillis;
+        this.executor.execute(() -> {
+            this.file = this.nextFile;
+            this.nextFile = null;
+            if (lastSegment != null) {
+                lastSegment.force();
+            }
+            this.deleteExpired();
+            this.prepare();
+        });
+        return true;
+    }
+
+    /**
+     * Creates and maps the next file, with a header that has no records and no start time yet. This must be run on
+     * the tick log thread.
+     */
+    private void prepare() {
+        long epochMillis = System.currentTimeMillis();
+        File file = new File(this.directory, FILE_PREFIX + epochMillis + FILE_SUFFIX);
+        // Files are named by when they were created, which must be unique
+        for (long fileEpochMillis = epochMillis + 1; file.exists(); ++fileEpochMillis) {
+            file = new File(this.directory, FILE_PREFIX + fileEpochMillis + FILE_SUFFIX);
+        }
+        MappedByteBuffer segment;
+        try {
+            if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+                throw new IOException("Unable to create " + this.directory);
+            }
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                long size = HEADER_SIZE + (long) this.maxRecordCount * RECORD_SIZE;
+                segment = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Unable to write tick log, so the tick history will not be saved", e);
+            return;
+        }
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segment.putInt(8, RECORD_SIZE);
+        segment.putInt(RECORD_COUNT_OFFSET, 0);
+        this.nextFile = file;
+        this.nextSegment = segment;
+    }
+
+    /**
+     * Deletes files which were started longer ago than the retention time, and files without any records which were
+     * left behind, other than the current and next file. This must be run on the tick log thread.
+     */
+    private void deleteExpired() {
+        long nowEpochMillis = System.currentTimeMillis();
+        for (File oldFile : this.listFiles()) {
+            if (oldFile.equals(this.file) || oldFile.equals(this.nextFile)) {
+                continue;
+            }
+            long startEpochMillis;
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(oldFile, "r")) {
+                ByteBuffer header = readHeader(randomAccessFile.getChannel());
+                startEpochMillis = header == null || header.getInt(RECORD_COUNT_OFFSET) <= 0 ?
+                        Long.MIN_VALUE : header.getLong(16);
+            } catch (IOException e) {
+                continue;
+            }
+            if (nowEpochMillis - startEpochMillis > this.retentionMillis && !oldFile.delete()) {
+                this.logger.warning("Unable to delete old tick log " + oldFile.getName());
+            }
+        }
+    }
+
+    /**
+     * Reads every tick recorded in a time range, in the order they were recorded. Files are mapped rather than read
+     * into memory, so this is suitable for any amount of history, but it should not be called from the main thread.
+     * Files are created before they are started, so only the start time in their header is used to skip them.
+     *
+     * @param fromEpochMillis The start of the time range in epoch milliseconds, inclusive.
+     * @param toEpochMillis   The end of the time range in epoch milliseconds, inclusive.
+     * @param consumer        The consumer of each tick.
+     * @throws IOException If the tick log could not be read.
+     */
+    public void read(long fromEpochMillis, long toEpochMillis, TickConsumer consumer) throws IOException {
+        // Files are named by when they were created, which is the order they were started in
+        for (File file : this.listFiles()) {
+            if (!this.readFile(file, 0, fromEpochMillis, toEpochMillis, consumer)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reads the most recent ticks, in the order they were recorded. Only the headers of older files are read to find
+     * where these ticks start, so this is quick enough for the main thread as long as the count is not too large. It
+     * should only be called while no ticks are being appended.
+     *
+     * @param count    The most ticks to read.
+     * @param consumer The consumer of each tick.
+     * @throws IOException If the tick log could not be read.
+     */
+    public void readLast(int count, TickConsumer consumer) throws IOException {
+        List<File> files = this.listFiles();
+        int firstFile = files.size();
+        long firstRecord = 0, remaining = count;
+        while (remaining > 0 && firstFile > 0) {
+            long recordCount = this.getRecordCount(files.get(--firstFile));
+            firstRecord = Math.max(0, recordCount - remaining);
+            remaining -= recordCount - firstRecord;
+        }
+        for (int i = firstFile; i < files.size(); ++i) {
+            this.readFile(files.get(i), i == firstFile ? firstRecord : 0, Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+        }
+    }
+
+    private long getRecordCount(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer header = readHeader(channel);
+            if (header == null) {
+                return 0;
+            }
+            return Math.max(0, Math.min(header.getInt(RECORD_COUNT_OFFSET),
+                    (channel.size() - HEADER_SIZE) / header.getInt(8)));
+        } catch (FileNotFoundException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads the ticks of a file which are in a time range, starting from a given record.
+     *
+     * @return False if the file was started after the time range, so later files can not contain anything in it.
+     */
+    private boolean readFile(File file, long firstRecord, long fromEpochMillis, long toEpochMillis,
+                             TickConsumer consumer) throws IOException {
+        RandomAccessFile openedFile;
+        try {
+            openedFile = new RandomAccessFile(file, "r");
+        } catch (FileNotFoundException e) {
+            // Expired files are deleted on the tick log thread, even while they are being read
+            return true;
+        }
+        try (RandomAccessFile randomAccessFile = openedFile) {
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer header = readHeader(channel);
+            if (header == null) {
+                this.logger.warning("Skipping tick log with an unknown format: " + file.getName());
+                return true;
+            }
+            int recordSize = header.getInt(8);
+            long recordCount = Math.min(header.getInt(RECORD_COUNT_OFFSET),
+                    (channel.size() - HEADER_SIZE) / recordSize);
+            long startEpochMillis = header.getLong(16);
+            double startTickTime = header.getDouble(24);
+            if (recordCount <= 0) {
+                return true;
+            } else if (startEpochMillis > toEpochMillis) {
+                return false;
+            }
+            ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, recordCount * recordSize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            // Records are in order, so a file which ends before the time range can be skipped without reading them
+            double lastTickTime = records.getDouble((int) (recordCount - 1) * recordSize);
+            if (startEpochMillis + Math.round(lastTickTime - startTickTime) < fromEpochMillis) {
+                return true;
+            }
+            for (int position = (int) Math.min(firstRecord * recordSize, records.limit());
+                 position < records.limit(); position += recordSize) {
+                double tickTime = records.getDouble(position);
+                long epochMillis = startEpochMillis + Math.round(tickTime - startTickTime);
+                if (epochMillis < fromEpochMillis) {
+                    continue;
+                } else if (epochMillis > toEpochMillis) {
+                    break;
+                }
+                consumer.accept(epochMillis,
+                        records.getInt(position + 32),
+                        records.getDouble(position + 8),
+                        records.getDouble(position + 16),
+                        records.getDouble(position + 24));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the header of a file.
+     *
+     * @return The header, or null if the file is not a tick log.
+     */
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return null;
+            }
+        }
+        return header.getInt(0) == MAGIC ? header : null;
+    }
+
+    /**
+     * Flushes and stops writing the current file, and deletes the next file which was never started. This must be
+     * called on the main thread once ticks are no longer appended, and waits a few seconds at most for the tick log
+     * thread to finish, so it is only meant for when the plugin is disabled.
+     */
+    public void close() {
+        MappedByteBuffer lastSegment = this.segment;
+        this.segment = null;
+        this.executor.execute(() -> {
+            if (lastSegment != null) {
+                lastSegment.force();
+            }
+            // A file which can not be deleted yet has no records, so it is deleted with the expired files later
+            if (this.nextFile != null && this.nextFile.delete()) {
+                this.nextFile = null;
+            }
+        });
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                this.logger.warning("Timed out flushing the tick log.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<File> listFiles() {
+        File[] files = this.directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX)
+                && name.endsWith(FILE_SUFFIX) && startOf(name) >= 0);
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        List<File> sortedFiles = new ArrayList<>(Arrays.asList(files));
+        sortedFiles.sort(Comparator.comparingLong(TickLog::startOf));
+        return sortedFiles;
+    }
+
+    private static long startOf(File file) {
+        return startOf(file.getName());
+    }
+
+    private static long startOf(String fileName) {
+        try {
+            return Long.parseLong(fileName.substring(FILE_PREFIX.length(), fileName.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Consumer of ticks read from the tick log.
+     */
+    public interface TickConsumer {
+
+        /**
+         * Accepts a tick.
+         *
+         * @param epochMillis       The time of the tick in epoch milliseconds.
+         * @param tickNumber        The tick number.
+         * @param tickLength        The tick length in milliseconds.
+         * @param tickDuration      The tick duration in milliseconds.
+         * @param tickSleepDuration The tick sleep duration in milliseconds.
+         */
+        void accept(long epochMillis, int tickNumber, double tickLength, double tickDuration, double tickSleepDuration);
+
+    }
+
+}
@@ -1,16 +1,30 @@
 package org.popcraft.stress.tps;
 
+import org.bukkit.Bukkit;
 import org.popcraft.stress.Stress;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 
 public abstract class TickProfiler {
 
     protected Stress plugin;
+    private final TickHistory tickHistory;
     private Map<String, TickInterval> tickIntervals;
+    private volatile TickInterval[] tickIntervalArray;
+    private final EwmaInterval[] ewmaIntervals;
+    private volatile TickLog tickLog;
+    private volatile TickListener[] tickListeners = new TickListener[0];
+    // Ticks loaded from the tick log, which are only recorded once the first new tick shows where they end
+    private LoadedTicks loadedTicks;
+    // Only used by the main thread, which is the thread that allocations are measured for
+    private final TickResourceSampler resourceSampler = new TickResourceSampler();
 
     /**
      * Creates a new tick profiler, which is used for measure and analysis of ticks.
@@ -19,13 +33,31 @@ public abstract class TickProfiler {
      */
     public TickProfiler(Stress plugin) {
         this.plugin = plugin;
-        this.tickIntervals = new HashMap<>();
-        tickIntervals.put("shortest", new TickInterval(plugin.getConfig().getString("tps.intervals.shortest")));
-        tickIntervals.put("short", new TickInterval(plugin.getConfig().getString("tps.intervals.short")));
-        tickIntervals.put("normal", new TickInterval(plugin.getConfig().getString("tps.intervals.normal")));
-        tickIntervals.put("long", new TickInterval(plugin.getConfig().getString("tps.intervals.long")));
-        tickIntervals.put("longest", new TickInterval(plugin.getConfig().getString("tps.intervals.longest")));
-        tickIntervals.put("ticks", new TickInterval(1200));
+        String[] configuredIntervals = {"shortest", "short", "normal", "long", "longest"};
+        // All intervals share one history, which must be able to hold the longest of them
+        int historyCapacity = 1200;
+        for (String interval : configuredIntervals) {
+            historyCapacity = Math.max(historyCapacity,
+                    TpsUtil.timeIntervalToTicks(plugin.getConfig().getString("tps.intervals." + interval)));
+        }
+        this.tickHistory = new TickHistory(historyCapacity);
+        this.tickIntervals = new ConcurrentHashMap<>();
+        for (String interval : configuredIntervals) {
+            tickIntervals.put(interval, new TickInterval(this.tickHistory,
+                    plugin.getConfig().getString("tps.intervals." + interval)));
+        }
+        tickIntervals.put("ticks", new TickInterval(this.tickHistory, 1200));
+        this.updateTickIntervalArray();
+        // Moving averages are kept for intervals too long to hold every tick for
+        List<EwmaInterval> ewmaIntervals = new ArrayList<>();
+        for (String interval : plugin.getConfig().getStringList("tps.intervals.averages")) {
+            try {
+                ewmaIntervals.add(new EwmaInterval(interval));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning(e.getMessage());
+            }
+        }
+        this.ewmaIntervals = ewmaIntervals.toArray(new EwmaInterval[0]);
     }
 
     /**
@@ -34,18 +66,232 @@ public abstract class TickProfiler {
      * @param tick The tick to update this tick profiler with.
      */
     public void update(Tick tick) {
-        for (String interval : tickIntervals.keySet()) {
-            tickIntervals.get(interval).addTick(tick);
+        this.record(tick.getTickNumber(), tick.getTickTime(), tick.getTickLength(), tick.getTickDuration(),
+                tick.getTickSleepDuration(), tick.getGcTime(), tick.getGcCount(), tick.getAllocatedBytes());
+    }
+
+    /**
+     * Update the tick profiler based on a time measurement between the current and last tick. This must be called on
+     * the main thread, where garbage collection and allocation are sampled, and does not allocate.
+     *
+     * @param tickNumber   The tick number.
+     * @param tickTime     The time in nanoseconds of the current tick.
+     * @param lastTickTime The time in nanoseconds of the last tick.
+     */
+    protected void update(int tickNumber, long tickTime, long lastTickTime) {
+        double tickLength = (tickTime - lastTickTime) / 1e6d;
+        this.resourceSampler.sample();
+        this.record(tickNumber, tickTime / 1e6d, tickLength, tickLength, 0d, this.resourceSampler.getGcTime(),
+                this.resourceSampler.getGcCount(), this.resourceSampler.getAllocatedBytes());
+    }
+
+    /**
+     * Update the tick profiler based on information provided by the tick end event. This must be called on the main
+     * thread at the end of the tick, where garbage collection and allocation are sampled, and does not allocate.
+     *
+     * @param tickNumber        The tick number.
+     * @param tickTime          The time in nanoseconds of the current tick.
+     * @param tickDuration      The tick duration in milliseconds.
+     * @param tickSleepDuration The time remaining in nanoseconds.
+     */
+    protected void update(int tickNumber, long tickTime, double tickDuration, long tickSleepDuration) {
+        double tickSleepDurationMillis = tickSleepDuration < 0 ? 0d : tickSleepDuration / 1e6d;
+        double tickLength = tickSleepDuration < 0 ? tickDuration : tickDuration + tickSleepDurationMillis;
+        this.resourceSampler.sample();
+        this.record(tickNumber, tickTime / 1e6d, tickLength, tickDuration == 0 ? tickLength : tickDuration,
+                tickSleepDurationMillis, this.resourceSampler.getGcTime(), this.resourceSampler.getGcCount(),
+                this.resourceSampler.getAllocatedBytes());
+    }
+
+    /**
+     * Records a tick into the tick history and updates all tracked intervals.
+     *
+     * @param tickNumber        The tick number.
+     * @param tickTime          The time in milliseconds of the tick.
+     * @param tickLength        The tick length in milliseconds.
+     * @param tickDuration      The tick duration in milliseconds.
+     * @param tickSleepDuration The tick sleep duration in milliseconds.
+     * @param gcTime            The garbage collection pause time in milliseconds accrued during the tick.
+     * @param gcCount           The number of garbage collections during the tick.
+     * @param allocatedBytes    The bytes allocated by the main thread during the tick.
+     */
+    private void record(int tickNumber, double tickTime, double tickLength, double tickDuration,
+                        double tickSleepDuration, double gcTime, int gcCount, long allocatedBytes) {
+        if (this.loadedTicks != null) {
+            this.recordLoadedTicks(tickTime - tickLength);
+        }
+        this.addTick(tickNumber, tickTime, tickLength, tickDuration, tickSleepDuration, gcTime, gcCount,
+                allocatedBytes);
+        TickLog tickLog = this.tickLog;
+        if (tickLog != null) {
+            tickLog.append(tickNumber, tickTime, tickLength, tickDuration, tickSleepDuration);
+        }
+        for (TickListener tickListener : this.tickListeners) {
+            tickListener.onTick(tickNumber, tickTime, tickLength, tickDuration, tickSleepDuration);
+        }
+    }
+
+    /**
+     * Adds a tick to the tick history, all tracked intervals and the moving averages.
+     */
+    private void addTick(int tickNumber, double tickTime, double tickLength, double tickDuration,
+                         double tickSleepDuration, double gcTime, int gcCount, long allocatedBytes) {
+        long stamp = this.tickHistory.beginWrite();
+        try {
+            this.tickHistory.addTick(tickNumber, tickTime, tickLength, tickDuration, tickSleepDuration, gcTime,
+                    gcCount, allocatedBytes);
+            for (TickInterval tickInterval : this.tickIntervalArray) {
+                tickInterval.update();
+            }
+            for (EwmaInterval ewmaInterval : this.ewmaIntervals) {
+                ewmaInterval.update(tickLength, tickDuration);
+            }
+        } finally {
+            this.tickHistory.endWrite(stamp);
         }
     }
 
+    /**
+     * Records the ticks loaded from the tick log, moved so that the last of them happened at a given time while
+     * keeping the time between them. They were logged already, so they are not logged again or given to listeners.
+     *
+     * @param endTickTime The time in milliseconds of the last loaded tick.
+     */
+    private void recordLoadedTicks(double endTickTime) {
+        LoadedTicks loadedTicks = this.loadedTicks;
+        this.loadedTicks = null;
+        long endEpochMillis = loadedTicks.epochMillis[loadedTicks.count - 1];
+        for (int i = 0; i < loadedTicks.count; ++i) {
+            // The tick log does not keep garbage collection or allocation information
+            this.addTick(loadedTicks.tickNumbers[i], endTickTime - (endEpochMillis - loadedTicks.epochMillis[i]),
+                    loadedTicks.tickLengths[i], loadedTicks.tickDurations[i], loadedTicks.tickSleepDurations[i],
+                    0d, 0, 0L);
+        }
+    }
+
+    /**
+     * Reloads the ticks which fit in the tick history from a tick log, which must be done on the main thread before
+     * any new ticks are recorded. They are recorded along with the first new tick, and moved so that the last of them
+     * is one tick length before it, so any time the server was not running or was starting up is left out, as if the
+     * ticks had carried on without a break. Older ticks only count towards the moving averages, which are loaded on
+     * another thread and include them once they are loaded.
+     *
+     * @param tickLog The tick log to load from.
+     * @return The number of ticks loaded into the tick history.
+     * @throws IOException If the tick log could not be read.
+     */
+    public long loadHistory(TickLog tickLog) throws IOException {
+        LoadedTicks loadedTicks = new LoadedTicks(this.tickHistory.getCapacity());
+        tickLog.readLast(this.tickHistory.getCapacity(), loadedTicks::add);
+        if (loadedTicks.count == 0) {
+            return 0;
+        }
+        this.loadedTicks = loadedTicks;
+        this.loadAverages(tickLog, loadedTicks.epochMillis[0], loadedTicks.tickNumbers[0]);
+        return loadedTicks.count;
+    }
+
+    /**
+     * Loads the moving averages from the ticks before the first tick loaded into the tick history, going back a few
+     * time constants of the longest of them. This is read on another thread, since it can be days of ticks, and then
+     * added to the moving averages on the main thread.
+     *
+     * @param tickLog          The tick log to load from.
+     * @param firstEpochMillis The time in epoch milliseconds of the first tick loaded into the tick history.
+     * @param firstTickNumber  The tick number of the first tick loaded into the tick history.
+     */
+    private void loadAverages(TickLog tickLog, long firstEpochMillis, int firstTickNumber) {
+        EwmaInterval[] earlierIntervals = new EwmaInterval[this.ewmaIntervals.length];
+        long averagesMillis = 0;
+        for (int i = 0; i < earlierIntervals.length; ++i) {
+            earlierIntervals[i] = new EwmaInterval(this.ewmaIntervals[i].getName());
+            averagesMillis = Math.max(averagesMillis, (long) this.ewmaIntervals[i].getTimeConstantMillis() * 3);
+        }
+        if (earlierIntervals.length == 0) {
+            return;
+        }
+        long fromEpochMillis = firstEpochMillis - averagesMillis;
+        Bukkit.getScheduler().runTaskAsynchronously(this.plugin, () -> {
+            boolean[] reachedFirstTick = new boolean[1];
+            try {
+                tickLog.read(fromEpochMillis, firstEpochMillis,
+                        (epochMillis, tickNumber, tickLength, tickDuration, tickSleepDuration) -> {
+                            // Ticks from the first one loaded into the tick history on are already recorded
+                            if (epochMillis == firstEpochMillis && tickNumber == firstTickNumber) {
+                                reachedFirstTick[0] = true;
+                            }
+                            if (!reachedFirstTick[0]) {
+                                for (EwmaInterval earlierInterval : earlierIntervals) {
+                                    earlierInterval.update(tickLength, tickDuration);
+                                }
+                            }
+                        });
+            } catch (IOException e) {
+                this.plugin.getLogger().log(Level.WARNING, "Unable to load the moving averages from the tick history",
+                        e);
+                return;
+            }
+            Bukkit.getScheduler().runTask(this.plugin, () -> {
+                long stamp = this.tickHistory.beginWrite();
+                try {
+                    for (int i = 0; i < earlierIntervals.length; ++i) {
+                        this.ewmaIntervals[i].addEarlier(earlierIntervals[i]);
+                    }
+                } finally {
+                    this.tickHistory.endWrite(stamp);
+                }
+            });
+        });
+    }
+
+    /**
+     * Sets the tick log which every new tick is appended to.
+     *
+     * @param tickLog The tick log, or null to stop logging ticks.
+     */
+    public void setTickLog(TickLog tickLog) {
+        this.tickLog = tickLog;
+    }
+
+    /**
+     * Gets the tick log which every new tick is appended to.
+     *
+     * @return The tick log, or null if ticks are not logged.
+     */
+    public TickLog getTickLog() {
+        return this.tickLog;
+    }
+
+    /**
+     * Adds a listener which is called for every new tick.
+     *
+     * @param tickListener The tick listener.
+     */
+    public synchronized void addTickListener(TickListener tickListener) {
+        TickListener[] tickListeners = Arrays.copyOf(this.tickListeners, this.tickListeners.length + 1);
+        tickListeners[tickListeners.length - 1] = tickListener;
+        this.tickListeners = tickListeners;
+    }
+
+    /**
+     * Removes a tick listener.
+     *
+     * @param tickListener The tick listener.
+     */
+    public synchronized void removeTickListener(TickListener tickListener) {
+        this.tickListeners = Arrays.stream(this.tickListeners)
+                .filter(listener -> listener != tickListener)
+                .toArray(TickListener[]::new);
+    }
+
     /**
      * Adds a new tick interval to start tracking.
      *
      * @param name The name of the interval.
      */
     public void addInterval(String name) {
-        tickIntervals.put(name, new TickInterval(Integer.MAX_VALUE));
+        tickIntervals.put(name, new TickInterval(this.tickHistory, Integer.MAX_VALUE));
+        this.updateTickIntervalArray();
     }
 
     /**
@@ -55,6 +301,7 @@ public abstract class TickProfiler {
      */
     public void removeInterval(String name) {
         tickIntervals.remove(name);
+        this.updateTickIntervalArray();
     }
 
     /**
@@ -67,13 +314,50 @@ public abstract class TickProfiler {
         return this.tickIntervals.get(name);
     }
 
+    /**
+     * Gets every tick interval being tracked, including those added by tests which are running.
+     *
+     * @return An unmodifiable view of the tick intervals by name.
+     */
+    public Map<String, TickInterval> getIntervals() {
+        return Collections.unmodifiableMap(this.tickIntervals);
+    }
+
+    /**
+     * Gets the moving average intervals, which are configured separately from the tick intervals.
+     *
+     * @return The moving average intervals.
+     */
+    public EwmaInterval[] getEwmaIntervals() {
+        return this.ewmaIntervals.clone();
+    }
+
+    /**
+     * Gets whether tick durations are measured, rather than taken to be the whole tick length. Without them, there is
+     * no telling how much of each tick the server spent working and how much it spent waiting for the next tick.
+     *
+     * @return True if tick durations are measured.
+     */
+    public boolean measuresTickDuration() {
+        return true;
+    }
+
+    /**
+     * Gets the tick history shared by all tick intervals.
+     *
+     * @return The tick history.
+     */
+    public TickHistory getHistory() {
+        return this.tickHistory;
+    }
+
     /**
      * Gets the last tick which was recorded.
      *
      * @return Last tick.
      */
     public Tick getLastTick() {
-        return this.tickIntervals.get("shortest").getTicks().getLast();
+        return this.tickHistory.read(() -> this.tickHistory.getTick(this.tickHistory.getTotalTickCount() - 1));
     }
 
     /**
@@ -83,23 +367,22 @@ public abstract class TickProfiler {
      * @return The tick if found, otherwise null.
      */
     public Tick getRecentTick(int tickNumber) {
-        Tick lastTick = this.getLastTick();
-        int offset = lastTick.getTickNumber() - tickNumber;
         TickInterval shortestTickInterval = this.tickIntervals.get("shortest");
-        int tickCount = shortestTickInterval.getTickCount();
-        if (offset == 0) {
-            return lastTick;
-        } else if (offset < tickCount) {
-            return shortestTickInterval.getTicks().get(tickCount - 1 - offset);
-        } else {
-            return null;
-        }
+        return this.tickHistory.read(() -> {
+            long lastSequence = this.tickHistory.getTotalTickCount() - 1;
+            int offset = this.tickHistory.getTickNumber(lastSequence) - tickNumber;
+            int tickCount = shortestTickInterval.getTickCount();
+            if (offset >= 0 && offset < tickCount) {
+                return this.tickHistory.getTick(lastSequence - offset);
+            } else {
+                return null;
+            }
+        });
     }
 
     public List<Tick> getRecentTicks() {
-        synchronized (this.tickIntervals.get("shortest").getTicks()) {
-            return new ArrayList<>(this.tickIntervals.get("shortest").getTicks());
-        }
+        TickInterval shortestTickInterval = this.tickIntervals.get("shortest");
+        return shortestTickInterval.getLastTicks(shortestTickInterval.getTickCount());
     }
 
     /**
@@ -155,7 +438,12 @@ public abstract class TickProfiler {
                 TpsUtil.formatTick(results[4].minTickDurationMillis),
                 TpsUtil.formatTick(results[4].avgTickDurationMillis),
                 TpsUtil.formatTick(results[4].maxTickDurationMillis),
-                TpsUtil.formatTick(results[4].stdevTickDurationMillis));
+                TpsUtil.formatTick(results[4].stdevTickDurationMillis),
+                results[0].shortName, results[0].gcShare * 100, results[0].gcCount, results[0].allocationRate / 1e6d,
+                results[1].shortName, results[1].gcShare * 100, results[1].gcCount, results[1].allocationRate / 1e6d,
+                results[2].shortName, results[2].gcShare * 100, results[2].gcCount, results[2].allocationRate / 1e6d,
+                results[3].shortName, results[3].gcShare * 100, results[3].gcCount, results[3].allocationRate / 1e6d,
+                results[4].shortName, results[4].gcShare * 100, results[4].gcCount, results[4].allocationRate / 1e6d);
     }
 
     /**
@@ -179,12 +467,18 @@ public abstract class TickProfiler {
                 TpsUtil.formatTick(result.minTickDurationMillis),
                 TpsUtil.formatTick(result.avgTickDurationMillis),
                 TpsUtil.formatTick(result.maxTickDurationMillis),
-                TpsUtil.formatTick(result.stdevTickDurationMillis));
+                TpsUtil.formatTick(result.stdevTickDurationMillis),
+                TpsUtil.formatTick(result.p50TickDurationMillis),
+                TpsUtil.formatTick(result.p90TickDurationMillis),
+                TpsUtil.formatTick(result.p99TickDurationMillis),
+                TpsUtil.formatTick(result.p999TickDurationMillis),
+                result.gcShare * 100, result.gcCount, result.gcTimeMillis, result.allocationRate / 1e6d);
     }
 
     /**
      * Generates a TPS report for a sub-interval, specified by the number of ticks.
-     * Note: Can take significantly longer to compute than a full interval, as less values are cached.
+     * Sub-intervals are calculated from cumulative sums and range queries over the tick history, so this is cheap
+     * for any number of ticks.
      *
      * @return Sub-interval TPS report.
      */
@@ -204,7 +498,71 @@ public abstract class TickProfiler {
                 TpsUtil.formatTick(result.minTickDurationMillis),
                 TpsUtil.formatTick(result.avgTickDurationMillis),
                 TpsUtil.formatTick(result.maxTickDurationMillis),
-                TpsUtil.formatTick(result.stdevTickDurationMillis));
+                TpsUtil.formatTick(result.stdevTickDurationMillis),
+                TpsUtil.formatTick(result.p50TickDurationMillis),
+                TpsUtil.formatTick(result.p90TickDurationMillis),
+                TpsUtil.formatTick(result.p99TickDurationMillis),
+                TpsUtil.formatTick(result.p999TickDurationMillis),
+                result.gcShare * 100, result.gcCount, result.gcTimeMillis, result.allocationRate / 1e6d);
+    }
+
+    /**
+     * Generates a report of tick duration percentiles for the default intervals.
+     *
+     * @return Tick duration percentiles report.
+     */
+    public String tpsPercentilesReport() {
+        String[] intervals = {"shortest", "short", "normal", "long", "longest"};
+        Object[] args = new Object[intervals.length * 5];
+        for (int i = 0; i < intervals.length; ++i) {
+            Result result = this.tickIntervals.get(intervals[i]).getResult();
+            if (!result.isValid) {
+                return plugin.getMessage("tps.error");
+            }
+            args[i * 5] = result.shortName;
+            args[i * 5 + 1] = TpsUtil.formatTick(result.p50TickDurationMillis);
+            args[i * 5 + 2] = TpsUtil.formatTick(result.p90TickDurationMillis);
+            args[i * 5 + 3] = TpsUtil.formatTick(result.p99TickDurationMillis);
+            args[i * 5 + 4] = TpsUtil.formatTick(result.p999TickDurationMillis);
+        }
+        return plugin.getMessage("tps.percentiles", args);
+    }
+
+    /**
+     * Generates a report of the moving averages, which cover intervals too long for the other reports.
+     *
+     * @return Moving averages report.
+     */
+    public String tpsAveragesReport() {
+        if (this.ewmaIntervals.length == 0) {
+            return plugin.getMessage("tps.averages.none");
+        }
+        // Copy the averages while reading, and only format them once they are known to be consistent
+        double[][] averages = this.tickHistory.read(() -> {
+            double[][] values = new double[this.ewmaIntervals.length][];
+            for (int i = 0; i < values.length; ++i) {
+                EwmaInterval ewmaInterval = this.ewmaIntervals[i];
+                if (!ewmaInterval.isValid()) {
+                    return null;
+                }
+                values[i] = new double[]{ewmaInterval.getTps(), ewmaInterval.getAverageTickDuration(),
+                        ewmaInterval.getStandardDeviationTickDuration(), ewmaInterval.getWarmup()};
+            }
+            return values;
+        });
+        if (averages == null) {
+            return plugin.getMessage("tps.error");
+        }
+        String[] lines = new String[averages.length];
+        for (int i = 0; i < lines.length; ++i) {
+            lines[i] = plugin.getMessage("tps.averages.interval",
+                    this.ewmaIntervals[i].getShortName(),
+                    TpsUtil.formatTps(averages[i][0]),
+                    TpsUtil.formatTick(averages[i][1]),
+                    TpsUtil.formatTick(averages[i][2]),
+                    averages[i][3] * 100);
+        }
+        return plugin.getMessage("tps.averages.header") + "\n" + String.join("\n", lines);
     }
 
     /**
@@ -217,14 +575,21 @@ public abstract class TickProfiler {
             this.plugin.getLogger().info(plugin.getMessage("tps.error"));
             return;
         }
-        List<Tick> ticks = tickInterval.getTicks();
+        double[] lastTickDurations = this.tickHistory.read(() -> {
+            double[] tickDurations = new double[5];
+            long lastSequence = this.tickHistory.getTotalTickCount() - 1;
+            for (int i = 0; i < tickDurations.length; ++i) {
+                tickDurations[i] = this.tickHistory.getTickDuration(Math.max(0, lastSequence - i));
+            }
+            return tickDurations;
+        });
         this.plugin.getLogger().info(plugin.getMessage("tps.debug",
                 this.getClass().getSimpleName(), result.tickingDuration, result.tickCount,
-                TpsUtil.formatTick(ticks.get(tickInterval.getTickCount() - 1).getTickDuration()),
-                TpsUtil.formatTick(ticks.get(tickInterval.getTickCount() - 2).getTickDuration()),
-                TpsUtil.formatTick(ticks.get(tickInterval.getTickCount() - 3).getTickDuration()),
-                TpsUtil.formatTick(ticks.get(tickInterval.getTickCount() - 4).getTickDuration()),
-                TpsUtil.formatTick(ticks.get(tickInterval.getTickCount() - 5).getTickDuration()),
+                TpsUtil.formatTick(lastTickDurations[0]),
+                TpsUtil.formatTick(lastTickDurations[1]),
+                TpsUtil.formatTick(lastTickDurations[2]),
+                TpsUtil.formatTick(lastTickDurations[3]),
+                TpsUtil.formatTick(lastTickDurations[4]),
                 TpsUtil.formatTps(result.tps),
                 TpsUtil.formatTick(result.currentTickDurationMillis),
                 TpsUtil.formatTick(result.minTickDurationMillis),
@@ -232,7 +597,17 @@ public abstract class TickProfiler {
                 TpsUtil.formatTick(result.maxTickDurationMillis),
                 TpsUtil.formatTick(result.stdevTickDurationMillis),
                 result.findNewTickCount,
-                result.findNewTickAverageMillis));
+                result.findNewTickAverageMillis,
+                result.gcShare * 100,
+                result.gcCount,
+                result.allocationRate / 1e6d));
+    }
+
+    /**
+     * Rebuilds the array of tick intervals which are updated on every tick, so that no map lookups are needed.
+     */
+    private void updateTickIntervalArray() {
+        this.tickIntervalArray = this.tickIntervals.values().toArray(new TickInterval[0]);
     }
 
     /**
@@ -240,4 +615,37 @@ public abstract class TickProfiler {
      */
     public abstract void stop();
 
+    /**
+     * Ticks loaded from the tick log, in the order they were recorded.
+     */
+    private static class LoadedTicks {
+
+        private int count;
+        private final int[] tickNumbers;
+        private final long[] epochMillis;
+        private final double[] tickLengths, tickDurations, tickSleepDurations;
+
+        private LoadedTicks(int capacity) {
+            this.tickNumbers = new int[capacity];
+            this.epochMillis = new long[capacity];
+            this.tickLengths = new double[capacity];
+            this.tickDurations = new double[capacity];
+            this.tickSleepDurations = new double[capacity];
+        }
+
+        private void add(long epochMillis, int tickNumber, double tickLength, double tickDuration,
+                         double tickSleepDuration) {
+            if (this.count == this.tickNumbers.length) {
+                return;
+            }
+            this.tickNumbers[this.count] = tickNumber;
+            this.epochMillis[this.count] = epochMillis;
+            this.tickLengths[this.count] = tickLength;
+            this.tickDurations[this.count] = tickDuration;
+            this.tickSleepDurations[this.count] = tickSleepDuration;
+            ++this.count;
+        }
+
+    }
+
 }
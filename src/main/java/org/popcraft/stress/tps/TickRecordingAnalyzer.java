@@ -0,0 +1,76 @@
+package org.popcraft.stress.tps;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Standalone entry point for analyzing tick recordings outside the server, which is the main class of the plugin jar.
+ * <p>
+ * Usage: {@code java -jar Stress.jar <recording>...}
+ */
+public class TickRecordingAnalyzer implements TickListener {
+
+    private final TickStatistics statistics = new TickStatistics();
+    private double firstTickTime, lastTickTime;
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java -jar Stress.jar <recording>...");
+            System.exit(1);
+        }
+        int status = 0;
+        for (String fileName : args) {
+            File file = new File(fileName);
+            TickRecordingAnalyzer analyzer = new TickRecordingAnalyzer();
+            long startTime = System.nanoTime();
+            try (TickRecordingReader reader = new TickRecordingReader(file)) {
+                reader.read(analyzer);
+            } catch (IOException e) {
+                System.err.println(fileName + ": " + e.getMessage());
+                status = 1;
+                continue;
+            }
+            System.out.println(fileName);
+            System.out.println(analyzer.report());
+            System.out.printf("Analyzed in %.2f seconds (%d bytes)%n%n", (System.nanoTime() - startTime) / 1e9d,
+                    file.length());
+        }
+        System.exit(status);
+    }
+
+    @Override
+    public void onTick(int tickNumber, double tickTime, double tickLength, double tickDuration,
+                       double tickSleepDuration) {
+        if (this.statistics.getTickCount() == 0) {
+            this.firstTickTime = tickTime;
+        }
+        this.lastTickTime = tickTime;
+        this.statistics.add(tickLength, tickDuration);
+    }
+
+    /**
+     * Generates a report of every tick analyzed, with the same statistics as a {@link Result}.
+     *
+     * @return The report.
+     */
+    public String report() {
+        long tickCount = this.statistics.getTickCount();
+        if (tickCount < 2) {
+            return "Too few ticks to analyze: " + tickCount;
+        }
+        double tickingDuration = (this.lastTickTime - this.firstTickTime) / 1e3d;
+        return String.format("Ticks: %d over %.2f seconds%n", tickCount, tickingDuration)
+                + String.format("TPS: %.2f%n", (tickCount - 1) / tickingDuration)
+                + String.format("Tick durations in ms (min, avg, max, stdev): %.2f, %.2f, %.2f, %.2f%n",
+                this.statistics.getMinTickDuration(),
+                this.statistics.getAverageTickDuration(),
+                this.statistics.getMaxTickDuration(),
+                this.statistics.getStandardDeviationTickDuration())
+                + String.format("Tick duration percentiles in ms (p50, p90, p99, p99.9): %.2f, %.2f, %.2f, %.2f",
+                this.statistics.getTickDurationPercentile(50),
+                this.statistics.getTickDurationPercentile(90),
+                this.statistics.getTickDurationPercentile(99),
+                this.statistics.getTickDurationPercentile(99.9));
+    }
+
+}
@@ -0,0 +1,159 @@
+package org.popcraft.stress.tps;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+public class TickRecordingReader implements Closeable {
+
+    private final DataInputStream inputStream;
+    private final int[] tickNumbers = new int[TickRecordingWriter.BLOCK_SIZE];
+    private final long[] tickTimes = new long[TickRecordingWriter.BLOCK_SIZE];
+    private final int[] tickLengths = new int[TickRecordingWriter.BLOCK_SIZE];
+    private final int[] tickDurations = new int[TickRecordingWriter.BLOCK_SIZE];
+    private final int[] tickSleepDurations = new int[TickRecordingWriter.BLOCK_SIZE];
+    private byte[] buffer = new byte[TickRecordingWriter.BLOCK_SIZE * 16];
+    private int position;
+
+    /**
+     * Opens a tick recording for reading. Only one block of ticks is held in memory at a time, so recordings of any
+     * size can be read.
+     *
+     * @param file The recording file.
+     * @throws IOException If the file could not be opened or is not a tick recording.
+     */
+    public TickRecordingReader(File file) throws IOException {
+        this.inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            int magic = this.inputStream.readInt();
+            int version = this.inputStream.readUnsignedByte();
+            if (magic != TickRecordingWriter.MAGIC || version != TickRecordingWriter.VERSION) {
+                throw new IOException("Not a supported tick recording: " + file.getName());
+            }
+        } catch (IOException e) {
+            this.inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads every remaining tick in the recording, in the order they were recorded.
+     *
+     * @param tickListener The listener to pass each tick to.
+     * @return The number of ticks read.
+     * @throws IOException If the recording could not be read.
+     */
+    public long read(TickListener tickListener) throws IOException {
+        long tickCount = 0;
+        int count;
+        while ((count = this.readBlock()) > 0) {
+            for (int i = 0; i < count; ++i) {
+                tickListener.onTick(this.tickNumbers[i],
+                        this.tickTimes[i] / 1e6d,
+                        this.tickLengths[i] / 1e3d,
+                        this.tickDurations[i] / 1e3d,
+                        this.tickSleepDurations[i] / 1e3d);
+            }
+            tickCount += count;
+        }
+        return tickCount;
+    }
+
+    /**
+     * Reads and decodes the next block of ticks into the columns.
+     *
+     * @return The number of ticks in the block, or zero at the end of the recording.
+     * @throws IOException If the block could not be read.
+     */
+    private int readBlock() throws IOException {
+        int count;
+        try {
+            count = this.readStreamVarInt();
+        } catch (EOFException e) {
+            return 0;
+        }
+        int length = this.readStreamVarInt();
+        if (count <= 0 || count > TickRecordingWriter.BLOCK_SIZE || length < 0) {
+            throw new IOException("Corrupt tick recording block");
+        }
+        if (this.buffer.length < length) {
+            this.buffer = new byte[length];
+        }
+        this.inputStream.readFully(this.buffer, 0, length);
+        this.position = 0;
+        int lastTickNumber = 0;
+        for (int i = 0; i < count; ++i) {
+            lastTickNumber += unZigZag(this.readVarInt());
+            this.tickNumbers[i] = lastTickNumber;
+        }
+        long lastTickTime = 0;
+        for (int i = 0; i < count; ++i) {
+            lastTickTime += unZigZag(this.readVarLong());
+            this.tickTimes[i] = lastTickTime;
+        }
+        for (int i = 0; i < count; ++i) {
+            this.tickLengths[i] = this.readVarInt();
+        }
+        for (int i = 0; i < count; ++i) {
+            this.tickDurations[i] = this.readVarInt();
+        }
+        for (int i = 0; i < count; ++i) {
+            this.tickSleepDurations[i] = this.readVarInt();
+        }
+        return count;
+    }
+
+    private int readStreamVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = this.inputStream.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt tick recording varint");
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = this.buffer[this.position++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt tick recording varint");
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = this.buffer[this.position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt tick recording varint");
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.inputStream.close();
+    }
+
+}
@@ -0,0 +1,241 @@
+package org.popcraft.stress.tps;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class TickRecordingWriter implements TickListener, Closeable {
+
+    static final int MAGIC = 0x53545243;
+    static final int VERSION = 1;
+    // Ticks are written in blocks of up to this many ticks, one column after another
+    static final int BLOCK_SIZE = 4096;
+
+    private final File file;
+    private final OutputStream outputStream;
+    private final ExecutorService executor;
+    private final Logger logger;
+    // Filled blocks are encoded and written off the main thread, and then returned here to be filled again
+    private final BlockingQueue<Block> freeBlocks = new ArrayBlockingQueue<>(4);
+    private Block block = new Block();
+    private long tickCount;
+    private volatile boolean failed;
+    // Only used by the writer thread
+    private byte[] buffer = new byte[BLOCK_SIZE * 16];
+    private final byte[] header = new byte[10];
+
+    /**
+     * Create a tick recording, which stores every tick in a compact columnar format. Tick numbers are stored as
+     * deltas, tick times as nanosecond deltas, and tick lengths and durations as microseconds, all as variable
+     * length integers, which is usually around 14 bytes per tick.
+     *
+     * @param file   The file to record to, which is replaced if it exists.
+     * @param logger Logger for any errors writing the recording.
+     * @throws IOException If the file could not be created.
+     */
+    public TickRecordingWriter(File file, Logger logger) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        this.file = file;
+        this.outputStream = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Stress Tick Recording");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.outputStream.write(new byte[]{(byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8),
+                (byte) MAGIC, (byte) VERSION});
+    }
+
+    /**
+     * Records a tick. This only copies the tick into the current block, which is encoded and written to disk on
+     * another thread once it is full.
+     */
+    @Override
+    public void onTick(int tickNumber, double tickTime, double tickLength, double tickDuration,
+                       double tickSleepDuration) {
+        this.block.add(tickNumber, tickTime, tickLength, tickDuration, tickSleepDuration);
+        ++this.tickCount;
+        if (this.block.count == BLOCK_SIZE) {
+            this.flush();
+        }
+    }
+
+    private void flush() {
+        Block fullBlock = this.block;
+        Block freeBlock = this.freeBlocks.poll();
+        this.block = freeBlock == null ? new Block() : freeBlock;
+        this.executor.execute(() -> {
+            this.write(fullBlock);
+            fullBlock.count = 0;
+            this.freeBlocks.offer(fullBlock);
+        });
+    }
+
+    private void write(Block block) {
+        if (this.failed) {
+            return;
+        }
+        // At most 5 bytes per int column and 10 bytes per long column
+        int maxLength = block.count * 30;
+        if (this.buffer.length < maxLength) {
+            this.buffer = new byte[maxLength];
+        }
+        int position = 0;
+        int lastTickNumber = 0;
+        for (int i = 0; i < block.count; ++i) {
+            position = writeVarInt(this.buffer, position, zigZag(block.tickNumbers[i] - lastTickNumber));
+            lastTickNumber = block.tickNumbers[i];
+        }
+        long lastTickTime = 0;
+        for (int i = 0; i < block.count; ++i) {
+            position = writeVarLong(this.buffer, position, zigZag(block.tickTimes[i] - lastTickTime));
+            lastTickTime = block.tickTimes[i];
+        }
+        for (int i = 0; i < block.count; ++i) {
+            position = writeVarInt(this.buffer, position, block.tickLengths[i]);
+        }
+        for (int i = 0; i < block.count; ++i) {
+            position = writeVarInt(this.buffer, position, block.tickDurations[i]);
+        }
+        for (int i = 0; i < block.count; ++i) {
+            position = writeVarInt(this.buffer, position, block.tickSleepDurations[i]);
+        }
+        int headerLength = writeVarInt(this.header, 0, block.count);
+        headerLength = writeVarInt(this.header, headerLength, position);
+        try {
+            this.outputStream.write(this.header, 0, headerLength);
+            this.outputStream.write(this.buffer, 0, position);
+        } catch (IOException e) {
+            this.failed = true;
+            this.logger.log(Level.WARNING, "Unable to write tick recording " + this.file.getName(), e);
+        }
+    }
+
+    /**
+     * Gets the file being recorded to.
+     *
+     * @return The recording file.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Gets the number of ticks recorded.
+     *
+     * @return The tick count.
+     */
+    public long getTickCount() {
+        return this.tickCount;
+    }
+
+    /**
+     * Hands any remaining ticks to the writer thread, without waiting for them to be written. This must be called on
+     * the same thread that records ticks, after the recording has stopped receiving them.
+     */
+    public void finish() {
+        if (this.executor.isShutdown()) {
+            return;
+        }
+        if (this.block.count > 0) {
+            this.flush();
+        }
+        this.executor.shutdown();
+    }
+
+    /**
+     * Waits up to 10 seconds for every tick to be written, and closes the recording. If the recording was not
+     * finished yet, this finishes it first, so it must then be called on the same thread that records ticks.
+     * Otherwise, it can be called on any thread, which should not be the main thread unless the server is stopping.
+     *
+     * @throws IOException If the recording could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        this.finish();
+        try {
+            if (!this.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                this.failed = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.failed = true;
+        }
+        this.outputStream.close();
+        if (this.failed) {
+            throw new IOException("Unable to write tick recording " + this.file.getName());
+        }
+    }
+
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static int writeVarInt(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    static int writeVarLong(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Quantizes a time in milliseconds to whole microseconds, which is the precision of tick lengths and durations.
+     *
+     * @param millis The time in milliseconds.
+     * @return The time in microseconds, limited to what fits in an int.
+     */
+    static int toMicros(double millis) {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, Math.round(millis * 1e3d)));
+    }
+
+    private static class Block {
+
+        private int count;
+        private final int[] tickNumbers = new int[BLOCK_SIZE];
+        private final long[] tickTimes = new long[BLOCK_SIZE];
+        private final int[] tickLengths = new int[BLOCK_SIZE];
+        private final int[] tickDurations = new int[BLOCK_SIZE];
+        private final int[] tickSleepDurations = new int[BLOCK_SIZE];
+
+        private void add(int tickNumber, double tickTime, double tickLength, double tickDuration,
+                         double tickSleepDuration) {
+            this.tickNumbers[this.count] = tickNumber;
+            this.tickTimes[this.count] = Math.round(tickTime * 1e6d);
+            this.tickLengths[this.count] = toMicros(tickLength);
+            this.tickDurations[this.count] = toMicros(tickDuration);
+            this.tickSleepDurations[this.count] = toMicros(tickSleepDuration);
+            ++this.count;
+        }
+
+    }
+
+}
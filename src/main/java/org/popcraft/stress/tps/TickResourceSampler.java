@@ -0,0 +1,104 @@
+package org.popcraft.stress.tps;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TickResourceSampler {
+
+    private final GarbageCollectorMXBean[] collectors;
+    private final com.sun.management.ThreadMXBean threadBean;
+    private boolean sampled;
+    private long lastGcTime, lastGcCount, lastAllocatedBytes;
+    // The amounts accrued since the previous sample
+    private double gcTime;
+    private int gcCount;
+    private long allocatedBytes;
+
+    /**
+     * Create a sampler for the garbage collection and allocation accrued between ticks. The collectors and thread
+     * bean are looked up once, so that sampling only reads counters and does not allocate. Collectors which run
+     * concurrently with the application (G1 concurrent cycles, ZGC and Shenandoah cycles) are left out, since their
+     * time is not spent paused.
+     */
+    public TickResourceSampler() {
+        List<GarbageCollectorMXBean> collectors = new ArrayList<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String name = collector.getName();
+            if (!name.contains("Concurrent") && !name.contains("Cycles")) {
+                collectors.add(collector);
+            }
+        }
+        this.collectors = collectors.toArray(new GarbageCollectorMXBean[0]);
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+            try {
+                if (!allocationBean.isThreadAllocatedMemorySupported()) {
+                    allocationBean = null;
+                } else if (!allocationBean.isThreadAllocatedMemoryEnabled()) {
+                    allocationBean.setThreadAllocatedMemoryEnabled(true);
+                }
+            } catch (UnsupportedOperationException | SecurityException e) {
+                allocationBean = null;
+            }
+        }
+        this.threadBean = allocationBean;
+    }
+
+    /**
+     * Samples the garbage collection counters and the bytes allocated by the current thread, and keeps the amounts
+     * accrued since the previous sample. This must always be called from the same thread, and does not allocate.
+     * The first sample has nothing to compare against, so it accrues nothing.
+     */
+    public void sample() {
+        long gcTime = 0, gcCount = 0;
+        for (GarbageCollectorMXBean collector : this.collectors) {
+            // Collectors report -1 when a value is not available
+            gcTime += Math.max(0, collector.getCollectionTime());
+            gcCount += Math.max(0, collector.getCollectionCount());
+        }
+        long allocatedBytes = this.threadBean == null ? 0 : this.threadBean.getCurrentThreadAllocatedBytes();
+        if (this.sampled) {
+            this.gcTime = Math.max(0, gcTime - this.lastGcTime);
+            this.gcCount = (int) Math.max(0, gcCount - this.lastGcCount);
+            this.allocatedBytes = Math.max(0, allocatedBytes - this.lastAllocatedBytes);
+        }
+        this.lastGcTime = gcTime;
+        this.lastGcCount = gcCount;
+        this.lastAllocatedBytes = allocatedBytes;
+        this.sampled = true;
+    }
+
+    /**
+     * Gets the time spent paused for garbage collection since the previous sample, which is only as precise as the
+     * collectors report it, usually whole milliseconds.
+     *
+     * @return The garbage collection time in milliseconds.
+     */
+    public double getGcTime() {
+        return this.gcTime;
+    }
+
+    /**
+     * Gets the number of garbage collections since the previous sample.
+     *
+     * @return The garbage collection count.
+     */
+    public int getGcCount() {
+        return this.gcCount;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the sampling thread since the previous sample.
+     *
+     * @return The allocated bytes, or zero if this is not supported by the JVM.
+     */
+    public long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+}
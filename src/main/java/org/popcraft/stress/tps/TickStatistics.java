@@ -0,0 +1,122 @@
+package org.popcraft.stress.tps;
+
+public class TickStatistics {
+
+    private long tickCount;
+    private double sumOfTickLengths, sumOfTickDurations, sumOfSquaredTickDurations;
+    private double minTickDuration = Double.MAX_VALUE, maxTickDuration = -Double.MAX_VALUE;
+    private final TickHistogram histogram = new TickHistogram();
+
+    /**
+     * Create new tick statistics, which summarize any number of ticks in a single pass using fixed memory. This is
+     * used for ticks which are streamed from somewhere other than the tick history, such as from disk.
+     */
+    public TickStatistics() {
+    }
+
+    /**
+     * Adds a tick to the statistics.
+     *
+     * @param tickLength   The tick length in milliseconds.
+     * @param tickDuration The tick duration in milliseconds.
+     */
+    public void add(double tickLength, double tickDuration) {
+        ++this.tickCount;
+        this.sumOfTickLengths += tickLength;
+        this.sumOfTickDurations += tickDuration;
+        this.sumOfSquaredTickDurations += tickDuration * tickDuration;
+        this.minTickDuration = Math.min(this.minTickDuration, tickDuration);
+        this.maxTickDuration = Math.max(this.maxTickDuration, tickDuration);
+        this.histogram.add(tickDuration);
+    }
+
+    /**
+     * Gets the number of ticks added.
+     *
+     * @return The tick count.
+     */
+    public long getTickCount() {
+        return this.tickCount;
+    }
+
+    /**
+     * Gets the total time spent ticking, including sleep time.
+     *
+     * @return The sum of tick lengths in milliseconds.
+     */
+    public double getTickingDurationMillis() {
+        return this.sumOfTickLengths;
+    }
+
+    /**
+     * Gets the TPS, which is based on the tick lengths rather than the wall clock, so that any time the server was
+     * not running is not counted.
+     *
+     * @return The TPS, or zero if no time has passed.
+     */
+    public double getTps() {
+        return this.sumOfTickLengths > 0 ? this.tickCount / this.sumOfTickLengths * 1e3d : 0;
+    }
+
+    /**
+     * Gets the minimum tick duration.
+     *
+     * @return Minimum tick duration in milliseconds.
+     */
+    public double getMinTickDuration() {
+        return this.tickCount == 0 ? 0 : this.minTickDuration;
+    }
+
+    /**
+     * Gets the maximum tick duration.
+     *
+     * @return Maximum tick duration in milliseconds.
+     */
+    public double getMaxTickDuration() {
+        return this.tickCount == 0 ? 0 : this.maxTickDuration;
+    }
+
+    /**
+     * Gets the average tick duration.
+     *
+     * @return Average tick duration in milliseconds.
+     */
+    public double getAverageTickDuration() {
+        return this.tickCount == 0 ? 0 : this.sumOfTickDurations / this.tickCount;
+    }
+
+    /**
+     * Gets the standard deviation of the tick duration.
+     *
+     * @return Standard deviation of the tick duration in milliseconds.
+     */
+    public double getStandardDeviationTickDuration() {
+        if (this.tickCount == 0) {
+            return 0;
+        }
+        double variance = this.sumOfSquaredTickDurations / this.tickCount - Math.pow(this.getAverageTickDuration(), 2);
+        // The variance will never be zero, except for when rare rounding errors occur
+        return variance < 0 ? 0 : Math.sqrt(variance);
+    }
+
+    /**
+     * Gets a tick duration percentile, which is limited to the exact minimum and maximum tick durations.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The tick duration in milliseconds.
+     */
+    public double getTickDurationPercentile(double percentile) {
+        double tickDuration = this.histogram.getValueAtPercentile(percentile);
+        return Math.min(this.getMaxTickDuration(), Math.max(this.getMinTickDuration(), tickDuration));
+    }
+
+    /**
+     * Gets the histogram of every tick duration added.
+     *
+     * @return The tick duration histogram.
+     */
+    public TickHistogram getHistogram() {
+        return this.histogram;
+    }
+
+}
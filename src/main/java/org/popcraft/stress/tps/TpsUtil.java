@@ -1,51 +1,79 @@
 package org.popcraft.stress.tps;
 
 import org.bukkit.ChatColor;
-import org.bukkit.configuration.ConfigurationSection;
 import org.popcraft.stress.Stress;
 
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 public class TpsUtil {
 
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+    private static final ThreadLocal<StringBuilder> FORMAT_BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(16));
+    private static ColorThresholds tpsColors = new ColorThresholds(ChatColor.GREEN);
+    private static ColorThresholds tickColors = new ColorThresholds(ChatColor.RED);
+    private static boolean truncate = true;
+
+    /**
+     * Compiles the formatting options from the plugin configuration, so that formatting does not need to look them up.
+     *
+     * @param plugin The plugin.
+     */
+    public static void loadConfig(Stress plugin) {
+        tpsColors = new ColorThresholds(plugin.getConfig().getConfigurationSection("tps.tpsColor"), ChatColor.GREEN,
+                plugin.getLogger());
+        tickColors = new ColorThresholds(plugin.getConfig().getConfigurationSection("tps.tickColor"), ChatColor.RED,
+                plugin.getLogger());
+        truncate = plugin.getConfig().getBoolean("tps.truncate");
+    }
+
     public static String formatTps(double tps) {
-        ChatColor color = matchColor(tps, ChatColor.GREEN, "tps.tpsColor");
-        boolean truncate = Stress.getPlugin().getConfig().getBoolean("tps.truncate");
+        StringBuilder builder = FORMAT_BUILDER.get();
+        builder.setLength(0);
+        builder.append(tpsColors.match(tps));
         if (truncate && tps > 20) {
-            return String.format("%s*%.2f", color, 20d);
+            builder.append('*');
+            appendFixed(builder, 20d, 2);
+        } else {
+            appendFixed(builder, tps, 2);
         }
-        return String.format("%s%.2f", color, tps);
+        return builder.toString();
     }
 
     public static String formatTick(double tick) {
-        ChatColor color = matchColor(tick, ChatColor.RED, "tps.tickColor");
-        return String.format("%s%.1f", color, tick);
+        StringBuilder builder = FORMAT_BUILDER.get();
+        builder.setLength(0);
+        builder.append(tickColors.match(tick));
+        appendFixed(builder, tick, 1);
+        return builder.toString();
     }
 
-    private static ChatColor matchColor(double value, ChatColor defaultColor, String key) {
-        ChatColor color = defaultColor;
-        String defaultColorString = Stress.getPlugin().getConfig().getString(key + ".default");
-        if (defaultColorString != null) {
-            color = ChatColor.valueOf(defaultColorString.toUpperCase());
+    /**
+     * Appends a number rounded to a fixed number of decimal places, without the overhead of a format string.
+     *
+     * @param builder  The builder to append to.
+     * @param value    The number.
+     * @param decimals The number of decimal places, up to six.
+     */
+    public static void appendFixed(StringBuilder builder, double value, int decimals) {
+        long scale = POWERS_OF_TEN[decimals];
+        double scaledValue = Math.abs(value) * scale;
+        if (Double.isNaN(value) || scaledValue >= Long.MAX_VALUE) {
+            builder.append(String.format("%." + decimals + "f", value));
+            return;
+        }
+        long rounded = Math.round(scaledValue);
+        if (value < 0) {
+            builder.append('-');
         }
-        ConfigurationSection tpsColors = Stress.getPlugin().getConfig().getConfigurationSection(key);
-        if (tpsColors != null) {
-            Set<String> tpsColorKeys = tpsColors.getKeys(false);
-            for (String k : tpsColorKeys) {
-                try {
-                    double threshold = Double.parseDouble(k);
-                    if (value <= threshold) {
-                        String colorString = Stress.getPlugin().getConfig().getString(key + "." + k);
-                        if (colorString != null) {
-                            color = ChatColor.valueOf(colorString.toUpperCase());
-                        }
-                    }
-                } catch (NumberFormatException ignored) {
-                }
+        builder.append(rounded / scale);
+        if (decimals > 0) {
+            builder.append('.');
+            long fraction = rounded % scale;
+            for (long power = scale / 10; power > fraction && power > 1; power /= 10) {
+                builder.append('0');
             }
+            builder.append(fraction);
         }
-        return color;
     }
 
     public static int timeIntervalToTicks(String interval) {